@@ -0,0 +1,247 @@
+package com.shunli.LexicalSystem;
+
+import com.shunli.LexicalSystem.token.TokenBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 基准测试使用的 Java 源文件语料。
+ * 优先读取 -Dbench.corpus 指定的 zip/目录, 其次是 JDK 自带的 src.zip, 都没有(或指定为 synthetic)时用固定种子生成源文件;
+ * 文件按名称排序后取到 -Dbench.corpus.chars 个字符为止(默认 8M), 选取时不使用词法分析器,
+ * 语料只由来源决定, 不随词法分析器的修改而变化; 打印的 crc 相同的结果才能直接比较。
+ * 词法分析器不支持的文件照样留在语料中, 由基准测试统计词法错误的个数。
+ */
+public final class Corpus {
+
+    private static final int MAX_CHARS = Integer.getInteger("bench.corpus.chars", 8 << 20);
+
+    private static Corpus instance = null;
+
+    public static synchronized Corpus instance() {
+        if (instance == null) {
+            instance = new Corpus();
+        }
+        return instance;
+    }
+
+    //每个文件的内容, 数组末尾多留一个位置给 ReaderHelper 的哨兵, 读取时不需要再复制
+    private final List<char[]> sources = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    private long totalChars = 0;
+
+    //所有文件内容的 crc32, 用来确认两次运行使用的是同一份语料
+    private final CRC32 crc = new CRC32();
+
+    //tokens() 遇到词法错误的文件
+    private final BitSet lexerErrors = new BitSet();
+
+    //语料的来源, 会打印在结果中, 只有来源相同的结果才能比较
+    private String origin;
+
+    private Corpus() {
+        try {
+            File file = locate();
+            if (file == null) {
+                synthesize();
+            } else if (file.isDirectory()) {
+                readDirectory(file);
+            } else {
+                readZip(file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.printf("corpus: %s, %d files, %d chars, crc %08x%n", origin, size(), totalChars, crc.getValue());
+    }
+
+    private static File locate() {
+        String property = System.getProperty("bench.corpus");
+        if (property != null) {
+            return property.equals("synthetic") ? null : new File(property);
+        }
+        File home = new File(System.getProperty("java.home"));
+        //JDK 9 以后在 lib/src.zip, JDK 8 在 jre 的上一级目录
+        for (File candidate : new File[]{new File(home, "lib/src.zip"), new File(home.getParentFile(), "src.zip")}) {
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void readZip(File file) throws IOException {
+        origin = file.getPath();
+        try (ZipFile zip = new ZipFile(file)) {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".java")) {
+                    names.add(entry.getName());
+                }
+            }
+            Collections.sort(names);
+            for (String name : names) {
+                if (totalChars >= MAX_CHARS) {
+                    break;
+                }
+                try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+                    add(decode(readAll(in)));
+                }
+            }
+        }
+    }
+
+    private void readDirectory(File dir) throws IOException {
+        origin = dir.getPath();
+        List<File> files = new ArrayList<>();
+        collect(dir, files);
+        Collections.sort(files);
+        for (File f : files) {
+            if (totalChars >= MAX_CHARS) {
+                break;
+            }
+            add(decode(java.nio.file.Files.readAllBytes(f.toPath())));
+        }
+    }
+
+    private static void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                collect(f, files);
+            } else if (f.getName().endsWith(".java")) {
+                files.add(f);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[8192];
+        int n;
+        while ((n = in.read(b)) > 0) {
+            out.write(b, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static CharBuffer decode(byte[] bytes) {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+    }
+
+    private void add(CharBuffer content) {
+        int length = content.remaining();
+        char[] buf = new char[length + 1];
+        content.get(buf, 0, length);
+        for (int i = 0; i < length; i++) {
+            crc.update(buf[i] >>> 8);
+            crc.update(buf[i]);
+        }
+        sources.add(buf);
+        lengths.add(length);
+        totalChars += length;
+    }
+
+    //用固定种子生成的源文件: 类、字段、方法、各种字面量和注释, 标识符有大量重复, 接近真实代码
+    private void synthesize() {
+        origin = "synthesized(seed=42)";
+        Random random = new Random(42);
+        String[] words = {"value", "count", "index", "name", "list", "map", "result", "buffer", "node", "type",
+                "size", "offset", "length", "context", "builder", "reader", "writer", "token", "symbol", "scope"};
+        String[] types = {"int", "long", "String", "boolean", "double", "List<String>", "Map<String, Integer>", "char[]"};
+        int file = 0;
+        while (totalChars < MAX_CHARS) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("package bench.gen").append(file % 16).append(";\n\n");
+            sb.append("import java.util.*;\n\n");
+            sb.append("/**\n * Generated class ").append(file).append(".\n */\n");
+            sb.append("public class Gen").append(file).append(" extends Base").append(file % 7).append(" {\n");
+            for (int m = 0; m < 40; m++) {
+                String w = words[random.nextInt(words.length)];
+                String t = types[random.nextInt(types.length)];
+                sb.append("    private ").append(t).append(' ').append(w).append(m).append(";\n");
+                sb.append("    // ").append(w).append(" accessor\n");
+                sb.append("    public ").append(t).append(" get").append(Character.toUpperCase(w.charAt(0)))
+                        .append(w.substring(1)).append(m).append("(int ").append(w).append(") {\n");
+                sb.append("        for (int i = 0; i < ").append(random.nextInt(1000)).append("; i++) {\n");
+                sb.append("            if (").append(w).append(" >= ").append(random.nextInt(Integer.MAX_VALUE))
+                        .append(" && i % 3 == 0) {\n");
+                sb.append("                System.out.println(\"").append(w).append(" = \" + ").append(w)
+                        .append(" + ").append(random.nextDouble()).append(");\n");
+                sb.append("            }\n        }\n        return ").append(w).append(m).append(";\n    }\n\n");
+            }
+            sb.append("}\n");
+            add(CharBuffer.wrap(sb));
+            file++;
+        }
+    }
+
+    public int size() {
+        return sources.size();
+    }
+
+    public char[] source(int i) {
+        return sources.get(i);
+    }
+
+    public int length(int i) {
+        return lengths.get(i);
+    }
+
+    public long totalChars() {
+        return totalChars;
+    }
+
+    public String origin() {
+        return origin;
+    }
+
+    //在第 i 个文件上直接创建读取器, 不复制字符
+    public ReaderHelper reader(int i) {
+        return new ReaderHelper(sources.get(i), lengths.get(i));
+    }
+
+    /**
+     * 第 i 个文件的 token, 供基准测试准备输入。
+     * 遇到词法错误时停下, 保留之前的 token, 并记下这个文件
+     */
+    public TokenBuffer tokens(int i) {
+        JavaTokenizer tokenizer = new JavaTokenizer(reader(i));
+        TokenBuffer buffer = new TokenBuffer(tokenizer.reader, length(i) / 4 + 16);
+        try {
+            while (tokenizer.scanToken()) {
+                buffer.add(tokenizer.tk, tokenizer.pos, tokenizer.endPos, tokenizer.name, tokenizer.literal());
+            }
+        } catch (RuntimeException e) {
+            synchronized (lexerErrors) {
+                lexerErrors.set(i);
+            }
+        }
+        return buffer;
+    }
+
+    //tokens() 遇到词法错误的文件个数
+    public int lexerErrorFiles() {
+        synchronized (lexerErrors) {
+            return lexerErrors.cardinality();
+        }
+    }
+}
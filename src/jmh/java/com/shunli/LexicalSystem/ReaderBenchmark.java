@@ -0,0 +1,86 @@
+package com.shunli.LexicalSystem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReaderHelper 的读取速度: 逐个字符读完整个语料, 以及从磁盘打开文件(读取、解码)的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+
+    //打开文件的测试只使用前面这些文件
+    private static final int FILES_ON_DISK = 200;
+
+    private Corpus corpus;
+    private File dir;
+    private String[] paths;
+
+    @Setup
+    public void setup() throws IOException {
+        corpus = Corpus.instance();
+        dir = File.createTempFile("reader-bench", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("cannot create " + dir);
+        }
+        paths = new String[Math.min(FILES_ON_DISK, corpus.size())];
+        for (int i = 0; i < paths.length; i++) {
+            File f = new File(dir, "F" + i + ".java");
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)) {
+                out.write(corpus.source(i), 0, corpus.length(i));
+            }
+            paths[i] = f.getPath();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (String path : paths) {
+            new File(path).delete();
+        }
+        dir.delete();
+    }
+
+    //每秒读取的字符数
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Chars {
+        public long chars;
+    }
+
+    @Benchmark
+    public int readNewChar(Chars counter) {
+        int sum = 0;
+        for (int i = 0; i < corpus.size(); i++) {
+            ReaderHelper reader = corpus.reader(i);
+            while (reader.bp < reader.buflen) {
+                sum += reader.readNewChar();
+            }
+            counter.chars += reader.buflen;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int openFiles(Chars counter) {
+        int total = 0;
+        for (String path : paths) {
+            ReaderHelper reader = new ReaderHelper(path);
+            total += reader.buflen;
+        }
+        counter.chars += total;
+        return total;
+    }
+}
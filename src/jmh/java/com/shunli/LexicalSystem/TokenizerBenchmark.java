@@ -0,0 +1,102 @@
+package com.shunli.LexicalSystem;
+
+import com.shunli.LexicalSystem.token.Token;
+import com.shunli.LexicalSystem.token.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 词法分析的吞吐量, 每次处理整个语料。
+ * tokens/chars 两个计数器给出每秒的 token 数和字符数;
+ * 加上 -prof gc 运行时, gc.alloc.rate.norm 除以语料的 token 数即为每个 token 分配的字节数。
+ * readAllTokensUtf8 在同一语料的 utf8 编码上用 Utf8ReaderHelper 扫描, 与 readAllTokens 对比。
+ * 遇到词法错误的文件跳过余下部分, 次数记在 lexerErrors 中; 比较结果时这个数也要相同。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    private Corpus corpus;
+
+    //语料的 utf8 编码, 末尾多留一个字节给哨兵
+    private byte[][] utf8;
+
+    @Setup
+    public void setup() {
+        corpus = Corpus.instance();
+        utf8 = new byte[corpus.size()][];
+        for (int i = 0; i < corpus.size(); i++) {
+            byte[] encoded = new String(corpus.source(i), 0, corpus.length(i)).getBytes(StandardCharsets.UTF_8);
+            utf8[i] = Arrays.copyOf(encoded, encoded.length + 1);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tokens;
+        public long chars;
+    }
+
+    //每次处理整个语料时遇到词法错误的文件数
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Errors {
+        public long lexerErrors;
+    }
+
+    //逐个创建 Token 对象
+    @Benchmark
+    public void readToken(Counters counters, Errors errors, Blackhole bh) {
+        for (int i = 0; i < corpus.size(); i++) {
+            JavaTokenizer tokenizer = new JavaTokenizer(corpus.reader(i));
+            Token token;
+            try {
+                while ((token = tokenizer.readToken()) != null) {
+                    bh.consume(token);
+                    counters.tokens++;
+                }
+            } catch (RuntimeException e) {
+                errors.lexerErrors++;
+            }
+            counters.chars += corpus.length(i);
+        }
+    }
+
+    //按列保存到 TokenBuffer, 不创建 Token 对象
+    @Benchmark
+    public void readAllTokens(Counters counters, Errors errors, Blackhole bh) {
+        for (int i = 0; i < corpus.size(); i++) {
+            try {
+                TokenBuffer tokens = new JavaTokenizer(corpus.reader(i)).readAllTokens();
+                bh.consume(tokens);
+                counters.tokens += tokens.size();
+            } catch (RuntimeException e) {
+                errors.lexerErrors++;
+            }
+            counters.chars += corpus.length(i);
+        }
+    }
+
+    @Benchmark
+    public void readAllTokensUtf8(Counters counters, Errors errors, Blackhole bh) {
+        for (int i = 0; i < utf8.length; i++) {
+            try {
+                TokenBuffer tokens = new JavaTokenizer(new Utf8ReaderHelper(utf8[i], utf8[i].length - 1)).readAllTokens();
+                bh.consume(tokens);
+                counters.tokens += tokens.size();
+            } catch (RuntimeException e) {
+                errors.lexerErrors++;
+            }
+            counters.chars += corpus.length(i);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.shunli.LexicalSystem;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 在不同提交之间比较 readToken 的速度和每个 token 分配的字节数。
+ * ./gradlew tokenizerHistory -Pcommits=e4a5e59,286169a -Pruns=3
+ * 每个提交的 src/main/java 用 git archive 取出, 与本文件一起编译, 在各自的 JVM 中运行,
+ * 所以本文件只使用所有提交都有的 ReaderHelper(char[], int)、JavaTokenizer(ReaderHelper) 和 readToken()。
+ * 语料是 JDK src.zip 中 java.base 和 java.desktop 的全部源文件, 按名称排序; 早期的词法分析器不支持注释、
+ * 字面量中的转义和注解, 块注释换成空格, 字符串和字符字面量换成 "s" 和 'c', '@' 换成空格。
+ * 只使用所有参与比较的提交都能完整分析的文件, 每个结果都打印文件数和 token 数, 相同时才能比较。
+ */
+public class TokenizerHistory {
+
+    private static final String SELF = "src/jmh/java/com/shunli/LexicalSystem/TokenizerHistory.java";
+    private static final String[] MODULES = {"java.base/", "java.desktop/"};
+
+    private static final int WARMUP = Integer.getInteger("history.warmup", 40);
+    private static final int ROUNDS = Integer.getInteger("history.rounds", 60);
+    //每个提交运行的次数, 各提交交替运行, 机器状态的变化不会只落在一个提交上
+    private static final int RUNS = Integer.getInteger("history.runs", 1);
+
+    private static final Pattern TOKENS = Pattern.compile("(\\d+) tokens");
+    private static final Pattern MILLIS = Pattern.compile("([\\d.]+) ms");
+
+    //让每个 token 都逃逸出循环, 不会被标量替换掉
+    static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("-child")) {
+            child(args[1], new File(args[2]));
+        } else if (args.length > 0) {
+            harness(args);
+        } else {
+            System.err.println("usage: TokenizerHistory <commit>... (-Dhistory.corpus=src.zip)");
+        }
+    }
+
+    private static void harness(String[] commits) throws Exception {
+        File work = new File("build/tokenizer-history");
+        File corpus = new File(work, "corpus");
+        List<String> files = prepareCorpus(locateSrcZip(), corpus);
+        System.out.println("corpus: " + files.size() + " files");
+
+        File[] classes = new File[commits.length];
+        for (int i = 0; i < commits.length; i++) {
+            classes[i] = build(commits[i], new File(work, commits[i]));
+        }
+
+        //只保留每个提交都能完整分析的文件
+        File list = new File(work, "files.txt");
+        Files.write(list.toPath(), files, StandardCharsets.UTF_8);
+        for (File c : classes) {
+            List<String> accepted = fork(c, "filter", list);
+            files.retainAll(accepted);
+            Files.write(list.toPath(), files, StandardCharsets.UTF_8);
+        }
+        System.out.println("accepted by every commit: " + files.size() + " files");
+
+        double[][] millis = new double[commits.length][RUNS];
+        long[] tokens = new long[commits.length];
+        for (int r = 0; r < RUNS; r++) {
+            for (int i = 0; i < commits.length; i++) {
+                String line = fork(classes[i], "measure", list).get(0);
+                System.out.println(commits[i] + ": " + line);
+                tokens[i] = parse(TOKENS, line).longValue();
+                millis[i][r] = parse(MILLIS, line).doubleValue();
+            }
+        }
+
+        //token 数不同说明分析的结果不同, 时间不能直接比较
+        for (int i = 1; i < commits.length; i++) {
+            if (tokens[i] != tokens[0]) {
+                System.out.printf("warning: %s produces %+d tokens compared to %s%n",
+                        commits[i], tokens[i] - tokens[0], commits[0]);
+            }
+        }
+        double base = median(millis[0]);
+        for (int i = 0; i < commits.length; i++) {
+            double m = median(millis[i]);
+            System.out.printf("%s: median %.2f ms over %d runs, %.2fx of %s%n", commits[i], m, RUNS, m / base, commits[0]);
+        }
+    }
+
+    private static Number parse(Pattern pattern, String line) {
+        Matcher m = pattern.matcher(line);
+        if (!m.find()) {
+            throw new IllegalStateException("unexpected output: " + line);
+        }
+        return Double.valueOf(m.group(1));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static File locateSrcZip() throws IOException {
+        String property = System.getProperty("history.corpus");
+        if (property != null) {
+            return new File(property);
+        }
+        File home = new File(System.getProperty("java.home"));
+        //JDK 9 以后在 lib/src.zip, JDK 8 在 jre 的上一级目录
+        for (File candidate : new File[]{new File(home, "lib/src.zip"), new File(home.getParentFile(), "src.zip")}) {
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        throw new IOException("src.zip not found, set -Dhistory.corpus");
+    }
+
+    //按名称排序取出两个模块的源文件, 处理后写到 dir 中, 返回文件的路径
+    private static List<String> prepareCorpus(File srcZip, File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        List<String> paths = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(srcZip)) {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                String name = e.nextElement().getName();
+                if (name.endsWith(".java") && (name.startsWith(MODULES[0]) || name.startsWith(MODULES[1]))) {
+                    names.add(name);
+                }
+            }
+            Collections.sort(names);
+            for (int i = 0; i < names.size(); i++) {
+                String source;
+                try (InputStream in = zip.getInputStream(zip.getEntry(names.get(i)))) {
+                    source = new String(readAll(in), StandardCharsets.UTF_8);
+                }
+                File f = new File(dir, "F" + i + ".java");
+                Files.write(f.toPath(), simplify(source).getBytes(StandardCharsets.UTF_8));
+                paths.add(f.getAbsolutePath());
+            }
+        }
+        return paths;
+    }
+
+    //块注释换成空格, 字符串(包括文本块)和字符字面量换成 "s" 和 'c', '@' 换成空格; 行注释保留
+    static String simplify(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '/' && i + 1 < n && s.charAt(i + 1) == '/') {
+                int end = i;
+                while (end < n && s.charAt(end) != '\n' && s.charAt(end) != '\r') {
+                    end++;
+                }
+                out.append(s, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+                int end = s.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                out.append(' ');
+            } else if (s.startsWith("\"\"\"", i)) {
+                int end = i + 3;
+                while (end < n && !s.startsWith("\"\"\"", end)) {
+                    end += s.charAt(end) == '\\' ? 2 : 1;
+                }
+                i = Math.min(end + 3, n);
+                out.append("\"s\"");
+            } else if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < n && s.charAt(end) != c && s.charAt(end) != '\n') {
+                    end += s.charAt(end) == '\\' ? 2 : 1;
+                }
+                i = Math.min(end + 1, n);
+                out.append(c == '"' ? "\"s\"" : "'c'");
+            } else {
+                out.append(c == '@' ? ' ' : c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    //取出提交的 src/main/java, 与本文件一起编译, 返回输出目录
+    private static File build(String commit, File dir) throws Exception {
+        File archive = new File(dir, "src.zip");
+        File src = new File(dir, "src");
+        File classes = new File(dir, "classes");
+        if (!classes.isDirectory() && !classes.mkdirs()) {
+            throw new IOException("cannot create " + classes);
+        }
+        run("git", "archive", "--format=zip", "-o", archive.getPath(), commit, "src/main/java");
+        List<String> sources = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(archive.toPath()))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.isDirectory() || !entry.getName().endsWith(".java")) {
+                    continue;
+                }
+                File f = new File(src, entry.getName());
+                f.getParentFile().mkdirs();
+                try (OutputStream out = new FileOutputStream(f)) {
+                    out.write(readAll(in));
+                }
+                sources.add(f.getPath());
+            }
+        }
+        sources.add(new File(SELF).getPath());
+
+        List<String> options = new ArrayList<>(Arrays.asList(
+                "-nowarn", "-proc:none", "-encoding", "UTF-8", "-d", classes.getPath(), "-cp", libraries()));
+        if (!System.getProperty("java.specification.version").startsWith("1.")) {
+            options.addAll(Arrays.asList("--add-exports", "jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED"));
+        }
+        options.addAll(sources);
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac.run(null, null, null, options.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("cannot compile " + commit);
+        }
+        return classes;
+    }
+
+    //当前类路径中的 jar(javac 的工具类、注解等), 不包括当前提交自己的输出目录
+    private static String libraries() {
+        StringBuilder sb = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (entry.endsWith(".jar")) {
+                sb.append(sb.length() == 0 ? "" : File.pathSeparator).append(entry);
+            }
+        }
+        return sb.toString();
+    }
+
+    //在新的 JVM 中运行 child, 返回它的输出
+    private static List<String> fork(File classes, String mode, File list) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(Arrays.asList("-XX:+UseParallelGC", "-Xms512m", "-Xmx512m"));
+        if (!System.getProperty("java.specification.version").startsWith("1.")) {
+            command.addAll(Arrays.asList("--add-exports", "jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED"));
+        }
+        command.addAll(Arrays.asList("-Dhistory.warmup=" + WARMUP, "-Dhistory.rounds=" + ROUNDS,
+                "-cp", classes.getPath() + File.pathSeparator + libraries(),
+                TokenizerHistory.class.getName(), "-child", mode, list.getPath()));
+        return run(command.toArray(new String[0]));
+    }
+
+    private static List<String> run(String... command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("failed: " + String.join(" ", command));
+        }
+        return lines;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[8192];
+        int n;
+        while ((n = in.read(b)) > 0) {
+            out.write(b, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 在被比较的提交中运行。
+     * filter: 输出能完整分析的文件; measure: 预热后重复分析所有文件, 输出每轮的时间和每个 token 分配的字节数(各轮的中位数)
+     */
+    private static void child(String mode, File list) throws IOException {
+        List<String> files = Files.readAllLines(list.toPath(), StandardCharsets.UTF_8);
+        char[][] sources = new char[files.size()][];
+        long chars = 0;
+        for (int i = 0; i < sources.length; i++) {
+            String s = new String(Files.readAllBytes(new File(files.get(i)).toPath()), StandardCharsets.UTF_8);
+            sources[i] = Arrays.copyOf(s.toCharArray(), s.length() + 1);
+            chars += s.length();
+        }
+        if (mode.equals("filter")) {
+            for (int i = 0; i < sources.length; i++) {
+                try {
+                    tokenize(sources[i]);
+                    System.out.println(files.get(i));
+                } catch (Throwable e) {
+                    //这个提交不支持的文件
+                }
+            }
+            return;
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int r = 0; r < WARMUP; r++) {
+            tokenizeAll(sources);
+        }
+        long tokens = 0;
+        long[] allocated = new long[ROUNDS];
+        long[] nanos = new long[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            tokens = tokenizeAll(sources);
+            nanos[r] = System.nanoTime() - start;
+            allocated[r] = threads.getThreadAllocatedBytes(thread) - before;
+        }
+        Arrays.sort(allocated);
+        Arrays.sort(nanos);
+        double seconds = nanos[ROUNDS / 2] / 1e9;
+        System.out.printf(Locale.ROOT, "%d files, %d chars, %d tokens, %.1f bytes allocated/token, %.2f ms, %.2f Mtokens/s, %.2f Mchars/s%n",
+                sources.length, chars, tokens, (double) allocated[ROUNDS / 2] / tokens,
+                seconds * 1e3, tokens / seconds / 1e6, chars / seconds / 1e6);
+    }
+
+    private static long tokenizeAll(char[][] sources) {
+        long tokens = 0;
+        for (char[] source : sources) {
+            tokens += tokenize(source);
+        }
+        return tokens;
+    }
+
+    private static long tokenize(char[] source) {
+        JavaTokenizer tokenizer = new JavaTokenizer(new ReaderHelper(source, source.length - 1));
+        long n = 0;
+        Object token;
+        while ((token = tokenizer.readToken()) != null) {
+            sink = token;
+            n++;
+        }
+        return n;
+    }
+}
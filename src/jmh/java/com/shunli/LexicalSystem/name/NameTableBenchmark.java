@@ -0,0 +1,147 @@
+package com.shunli.LexicalSystem.name;
+
+import com.shunli.LexicalSystem.Corpus;
+import com.shunli.LexicalSystem.token.TokenBuffer;
+import com.shunli.LexicalSystem.token.TokenKind;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedNameTable.fromChars 的登记速度。
+ * 语料中所有标识符依次登记: 已经登记过的表(绝大多数命中)和每次新建的空表;
+ * 另外把语料中的标识符扩展成一百万个不同的名称, 测量大表的登记速度, 结束时打印探测距离和 hash 冲突。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameTableBenchmark {
+
+    private static final int MILLION = 1000000;
+
+    //语料中每个标识符出现的位置, 按出现顺序
+    private char[][] idSource;
+    private int[] idPos;
+    private int[] idLen;
+    private int idCount = 0;
+
+    //一百万个不同的名称, 连续存放在 millionChars 中
+    private char[] millionChars;
+    private int[] millionStart;
+
+    //已经登记过语料中所有标识符的表
+    private SharedNameTable warm;
+
+    private SharedNameTable fresh;
+
+    @Setup
+    public void setup() {
+        Corpus corpus = Corpus.instance();
+        idSource = new char[1024][];
+        idPos = new int[1024];
+        idLen = new int[1024];
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < corpus.size(); i++) {
+            TokenBuffer tokens = corpus.tokens(i);
+            for (int t = 0; t < tokens.size(); t++) {
+                if (tokens.kind(t) != TokenKind.IDENTIFIER) {
+                    continue;
+                }
+                if (idCount == idPos.length) {
+                    idSource = Arrays.copyOf(idSource, idCount * 2);
+                    idPos = Arrays.copyOf(idPos, idCount * 2);
+                    idLen = Arrays.copyOf(idLen, idCount * 2);
+                }
+                idSource[idCount] = corpus.source(i);
+                idPos[idCount] = tokens.pos(t);
+                idLen[idCount] = tokens.endPos(t) - tokens.pos(t);
+                idCount++;
+                distinct.add(tokens.getText(t));
+            }
+        }
+
+        //不够一百万时在后面加上 '$' 和序号, 保持真实标识符的长度和字符分布
+        String[] names = distinct.toArray(new String[0]);
+        StringBuilder sb = new StringBuilder();
+        millionStart = new int[MILLION + 1];
+        for (int i = 0; i < MILLION; i++) {
+            millionStart[i] = sb.length();
+            sb.append(names[i % names.length]);
+            if (i >= names.length) {
+                sb.append('$').append(i / names.length);
+            }
+        }
+        millionStart[MILLION] = sb.length();
+        millionChars = sb.toString().toCharArray();
+
+        warm = new SharedNameTable(Names.instance());
+        internCorpus(warm, null);
+        System.out.println("corpus identifiers: " + idCount + " occurrences, " + distinct.size() + " distinct, "
+                + corpus.lexerErrorFiles() + " files with lexer errors");
+        report("corpus", warm);
+    }
+
+    @Setup(Level.Invocation)
+    public void newTable() {
+        fresh = new SharedNameTable(Names.instance());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (fresh.getNameCount() > MILLION / 2) {
+            report("1M names", fresh);
+        }
+    }
+
+    //探测距离和完整 hash 值的冲突, 用来比较不同的 hash 函数
+    private static void report(String what, SharedNameTable t) {
+        System.out.printf("%s: %d names, average probe %.3f, max probe %d, 32-bit hash collisions %d%n",
+                what, t.getNameCount(), t.getAverageProbeLength(), t.getMaxProbeLength(), t.getHashCollisionCount());
+    }
+
+    private void internCorpus(SharedNameTable t, Blackhole bh) {
+        for (int i = 0; i < idCount; i++) {
+            Name n = t.fromChars(idSource[i], idPos[i], idLen[i]);
+            if (bh != null) {
+                bh.consume(n);
+            }
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Interned {
+        public long names;
+    }
+
+    //表中已有全部标识符, 测量查找命中的速度
+    @Benchmark
+    public void internWarm(Interned counter, Blackhole bh) {
+        internCorpus(warm, bh);
+        counter.names += idCount;
+    }
+
+    //从空表开始, 包含新建名称和扩容的开销
+    @Benchmark
+    public void internCold(Interned counter, Blackhole bh) {
+        internCorpus(fresh, bh);
+        counter.names += idCount;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public void intern1M(Blackhole bh) {
+        for (int i = 0; i < MILLION; i++) {
+            bh.consume(fresh.fromChars(millionChars, millionStart[i], millionStart[i + 1] - millionStart[i]));
+        }
+    }
+}
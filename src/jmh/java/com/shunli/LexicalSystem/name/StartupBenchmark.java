@@ -0,0 +1,67 @@
+package com.shunli.LexicalSystem.name;
+
+import com.shunli.LexicalSystem.Corpus;
+import com.shunli.LexicalSystem.token.TokenBuffer;
+import com.shunli.LexicalSystem.token.TokenKind;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动时准备名称表的两种方式: 逐个登记语料中出现过的所有名称, 或者映射预先写好的快照。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = 1)
+@Measurement(iterations = 10, batchSize = 1)
+@Fork(1)
+public class StartupBenchmark {
+
+    private String[] names;
+    private File snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus corpus = Corpus.instance();
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < corpus.size(); i++) {
+            TokenBuffer tokens = corpus.tokens(i);
+            for (int t = 0; t < tokens.size(); t++) {
+                if (tokens.kind(t) == TokenKind.IDENTIFIER) {
+                    distinct.add(tokens.getText(t));
+                }
+            }
+        }
+        names = distinct.toArray(new String[0]);
+
+        SharedNameTable table = cold();
+        snapshot = File.createTempFile("names", ".snapshot");
+        table.writeSnapshot(snapshot);
+        System.out.println("startup names: " + table.getNameCount() + ", snapshot " + snapshot.length() + " bytes, "
+                + corpus.lexerErrorFiles() + " files with lexer errors");
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public SharedNameTable cold() {
+        SharedNameTable table = new SharedNameTable(Names.instance());
+        for (String name : names) {
+            table.fromString(name);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public SharedNameTable snapshot() throws IOException {
+        return SharedNameTable.readSnapshot(Names.instance(), snapshot);
+    }
+}
@@ -0,0 +1,57 @@
+package com.shunli.LexicalSystem.token;
+
+import com.shunli.LexicalSystem.Corpus;
+import com.shunli.LexicalSystem.name.Name;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens.lookupKind 的速度, 输入是语料中按出现顺序排列的所有标识符和关键字。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokensBenchmark {
+
+    //每次调用查找的名称个数
+    private static final int BATCH = 1 << 16;
+
+    private Tokens tokens;
+    private Name[] names;
+
+    @Setup
+    public void setup() {
+        tokens = Tokens.instance();
+        Corpus corpus = Corpus.instance();
+        names = new Name[BATCH];
+        int count = 0;
+        for (int i = 0; i < corpus.size() && count < BATCH; i++) {
+            TokenBuffer buffer = corpus.tokens(i);
+            for (int t = 0; t < buffer.size() && count < BATCH; t++) {
+                if (buffer.name(t) != null) {
+                    names[count++] = buffer.name(t);
+                }
+            }
+        }
+        //语料不够时重复使用已有的名称
+        for (int i = count; i < BATCH; i++) {
+            names[i] = names[i % count];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int lookupKind() {
+        int identifiers = 0;
+        for (Name name : names) {
+            if (tokens.lookupKind(name) == TokenKind.IDENTIFIER) {
+                identifiers++;
+            }
+        }
+        return identifiers;
+    }
+}
@@ -2,12 +2,19 @@ package com.shunli.FileSystem;
 
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileUtil {
 
@@ -16,19 +23,23 @@ public class FileUtil {
 
     /**
      * Make a byte buffer from an input stream.
+     * available() 只用来估计初始大小, 一直读到流结束(read 返回 -1)为止。
+     * 返回的缓冲区来自 byteBufferCache, 用完后应通过 releaseByteBuffer 归还。
      */
     public static ByteBuffer makeByteBuffer(InputStream in)
             throws IOException {
-        int limit = in.available();
-        if (limit < 1024) limit = 1024;
-        ByteBuffer result = byteBufferCache.get(limit);
+        ByteBuffer result = byteBufferCache.get(in.available() + 1);
+        int limit = result.capacity();
         int position = 0;
-        while (in.available() != 0) {
-            if (position >= limit)
+        while (true) {
+            if (position >= limit) {
                 // expand buffer
-                result = ByteBuffer.
-                        allocate(limit <<= 1).
-                        put((ByteBuffer) result.flip());
+                ByteBuffer bigger = byteBufferCache.get(limit << 1);
+                bigger.put((ByteBuffer) result.flip());
+                byteBufferCache.put(result);
+                result = bigger;
+                limit = result.capacity();
+            }
             int count = in.read(result.array(),
                     position,
                     limit - position);
@@ -38,41 +49,159 @@ public class FileUtil {
         return (ByteBuffer) result.flip();
     }
 
+    /**
+     * 文件的大小已知, 直接读入一个足够大的缓冲区, 不需要估计大小, 也不会扩容复制。
+     * 用 FileInputStream.read 直接读进缓冲区的数组, 堆上的 ByteBuffer 经 FileChannel.read 还要多复制一次。
+     * 读取过程中文件变长时只读取开始时的大小。
+     * /proc 等特殊文件的大小为 0, 实际却有内容, 这时退回到按流读取直到结束。
+     */
+    public static ByteBuffer makeByteBuffer(FileInputStream in)
+            throws IOException {
+        long size = in.getChannel().size();
+        if (size == 0) {
+            return makeByteBuffer((InputStream) in);
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("file too large: " + size + " bytes");
+        }
+        ByteBuffer result = byteBufferCache.get((int) size);
+        int position = 0;
+        while (position < size) {
+            int count = in.read(result.array(), position, (int) size - position);
+            if (count < 0) break;
+            position += count;
+        }
+        result.limit(position);
+        return result;
+    }
+
+    //归还 makeByteBuffer 得到的缓冲区, 之后不能再使用它
+    public static void releaseByteBuffer(ByteBuffer buffer) {
+        byteBufferCache.put(buffer);
+    }
+
+    /**
+     * 按大小分级的缓冲区池: 容量都是 2 的幂, 从 MIN_SHIFT 到 MAX_SHIFT 每一级一个无锁队列,
+     * 每级最多保留 CAPACITY_PER_CLASS 个; 更大的缓冲区不保留。
+     * 多个线程同时读取文件时不会互相阻塞, 读取大量源文件时几乎不需要分配新的缓冲区。
+     */
     private static class ByteBufferCache {
-        private ByteBuffer cached;
+        private static final int MIN_SHIFT = 15;
+        private static final int MAX_SHIFT = 24;
+        private static final int CAPACITY_PER_CLASS = 8;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final ConcurrentLinkedQueue<SoftReference<ByteBuffer>>[] classes =
+                new ConcurrentLinkedQueue[MAX_SHIFT - MIN_SHIFT + 1];
+        private final AtomicInteger[] pooled = new AtomicInteger[classes.length];
 
+        //重用和新建的次数
+        private final AtomicLong reuseCount = new AtomicLong();
+        private final AtomicLong allocationCount = new AtomicLong();
+
+        ByteBufferCache() {
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = new ConcurrentLinkedQueue<>();
+                pooled[i] = new AtomicInteger();
+            }
+        }
+
+        //容量至少为 capacity 的空缓冲区
         ByteBuffer get(int capacity) {
-            if (capacity < 20480) capacity = 20480;
-            ByteBuffer result =
-                    (cached != null && cached.capacity() >= capacity)
-                            ? (ByteBuffer) cached.clear()
-                            : ByteBuffer.allocate(capacity + capacity >> 1);
-            cached = null;
-            return result;
+            int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+            if (shift <= MAX_SHIFT) {
+                int c = shift - MIN_SHIFT;
+                SoftReference<ByteBuffer> ref;
+                while ((ref = classes[c].poll()) != null) {
+                    pooled[c].decrementAndGet();
+                    ByteBuffer cached = ref.get();
+                    if (cached != null) {
+                        reuseCount.incrementAndGet();
+                        return (ByteBuffer) cached.clear();
+                    }
+                }
+            }
+            allocationCount.incrementAndGet();
+            return ByteBuffer.allocate(shift <= MAX_SHIFT ? 1 << shift : capacity);
         }
 
         void put(ByteBuffer x) {
-            cached = x;
+            int capacity = x.capacity();
+            int shift = 31 - Integer.numberOfLeadingZeros(capacity);
+            if (x.isDirect() || x.isReadOnly() || capacity != 1 << shift || shift < MIN_SHIFT || shift > MAX_SHIFT) {
+                return;
+            }
+            int c = shift - MIN_SHIFT;
+            int n;
+            do {
+                n = pooled[c].get();
+                if (n >= CAPACITY_PER_CLASS) {
+                    return;
+                }
+            } while (!pooled[c].compareAndSet(n, n + 1));
+            classes[c].offer(new SoftReference<>(x));
         }
+
+        long getReuseCount() {
+            return reuseCount.get();
+        }
+
+        long getAllocationCount() {
+            return allocationCount.get();
+        }
+    }
+
+    public static long getByteBufferReuseCount() {
+        return byteBufferCache.getReuseCount();
+    }
+
+    public static long getByteBufferAllocationCount() {
+        return byteBufferCache.getAllocationCount();
     }
 
 
+    //默认编码的名字, 第一次用到时取得; 默认编码在运行期间不会改变
+    private static volatile String encodingName;
+
+    //每个线程各自缓存的解码器, 键为 编码名 + 是否忽略错误
+    private static final ThreadLocal<Map<String, CharsetDecoder>> decoders = new ThreadLocal<Map<String, CharsetDecoder>>() {
+        @Override
+        protected Map<String, CharsetDecoder> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    /**
+     * 解码整个文件。返回的 CharBuffer 的 position 为 0, 数组在 limit 之后至少还有一个空位。
+     * 每次返回新的数组, token 直接引用其中的字符, 不能在文件之间重复使用。
+     */
     public static CharBuffer decode(ByteBuffer inbuf, boolean ignoreEncodingErrors) {
         String encodingName = getEncodingName();
         CharsetDecoder decoder;
         try {
-            decoder = FileUtil.getDecoder(encodingName, ignoreEncodingErrors);
+            decoder = getCachedDecoder(encodingName, ignoreEncodingErrors);
         } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
             System.out.println("unsupported.encoding" + encodingName);
             return (CharBuffer) CharBuffer.allocate(1).flip();
         }
 
-        // slightly overestimate the buffer size to avoid reallocation.
-        float factor =
-                decoder.averageCharsPerByte() * 0.8f +
-                        decoder.maxCharsPerByte() * 0.2f;
-        CharBuffer dest = CharBuffer.
-                allocate(10 + (int) (inbuf.remaining() * factor));
+        CharBuffer dest;
+        if (isAsciiCompatible(decoder.charset())) {
+            //这几种编码中一个字节最多得到一个字符, 按字节数分配一定够用;
+            //开头的 ASCII 字节直接扩展成字符, 全是 ASCII 时不需要经过解码器
+            dest = CharBuffer.wrap(new char[inbuf.remaining() + 1]);
+            widenAscii(inbuf, dest);
+            if (!inbuf.hasRemaining()) {
+                return (CharBuffer) dest.flip();
+            }
+        } else {
+            // slightly overestimate the buffer size to avoid reallocation.
+            float factor =
+                    decoder.averageCharsPerByte() * 0.8f +
+                            decoder.maxCharsPerByte() * 0.2f;
+            dest = CharBuffer.
+                    allocate(10 + (int) (inbuf.remaining() * factor));
+        }
 
         while (true) {
             CoderResult result = decoder.decode(inbuf, dest, true);
@@ -108,6 +237,49 @@ public class FileUtil {
         // unreached
     }
 
+    //0x00-0x7f 的字节就是同值的字符, 并且一个字节最多解码出一个字符
+    private static boolean isAsciiCompatible(Charset cs) {
+        return cs.equals(StandardCharsets.UTF_8)
+                || cs.equals(StandardCharsets.US_ASCII)
+                || cs.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    //把 in 开头的 ASCII 字节逐个扩展到 out 中, 遇到第一个非 ASCII 字节为止, 两者的 position 随之前进
+    private static void widenAscii(ByteBuffer in, CharBuffer out) {
+        char[] chars = out.array();
+        int base = out.arrayOffset() + out.position();
+        int start = in.position();
+        int n = Math.min(in.remaining(), out.remaining());
+        int i = 0;
+        if (in.hasArray()) {
+            byte[] bytes = in.array();
+            int offset = in.arrayOffset() + start;
+            while (i < n && bytes[offset + i] >= 0) {
+                chars[base + i] = (char) bytes[offset + i];
+                i++;
+            }
+        } else {
+            byte b;
+            while (i < n && (b = in.get(start + i)) >= 0) {
+                chars[base + i] = (char) b;
+                i++;
+            }
+        }
+        in.position(start + i);
+        out.position(out.position() + i);
+    }
+
+    private static CharsetDecoder getCachedDecoder(String encodingName, boolean ignoreEncodingErrors) {
+        Map<String, CharsetDecoder> cache = decoders.get();
+        String key = ignoreEncodingErrors ? encodingName + "/replace" : encodingName;
+        CharsetDecoder decoder = cache.get(key);
+        if (decoder == null) {
+            decoder = getDecoder(encodingName, ignoreEncodingErrors);
+            cache.put(key, decoder);
+        }
+        return decoder.reset();
+    }
+
     public static CharsetDecoder getDecoder(String encodingName, boolean ignoreEncodingErrors) {
         Charset cs = Charset.forName(encodingName);
         CharsetDecoder decoder = cs.newDecoder();
@@ -124,7 +296,11 @@ public class FileUtil {
     }
 
     public static String getEncodingName() {
-        return new OutputStreamWriter(new ByteArrayOutputStream()).getEncoding();
+        String name = encodingName;
+        if (name == null) {
+            encodingName = name = new OutputStreamWriter(new ByteArrayOutputStream()).getEncoding();
+        }
+        return name;
     }
 
 
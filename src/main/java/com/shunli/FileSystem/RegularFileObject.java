@@ -62,10 +62,13 @@ public class RegularFileObject extends BaseFileObject {
     @Override
     public CharBuffer getCharContent(boolean ignoreEncodingErrors) throws IOException {
         CharBuffer cb = null;
-        InputStream in = new FileInputStream(file);
+        FileInputStream in = new FileInputStream(file);
         try {
+            //按文件的实际大小一次读入
             ByteBuffer bb = FileUtil.makeByteBuffer(in);
             cb = FileUtil.decode(bb, ignoreEncodingErrors);
+            //解码后的字符已经复制到 cb 中, 缓冲区可以给下一个文件使用
+            FileUtil.releaseByteBuffer(bb);
         } finally {
             in.close();
         }
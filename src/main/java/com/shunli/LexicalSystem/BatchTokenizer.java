@@ -0,0 +1,144 @@
+package com.shunli.LexicalSystem;
+
+import com.shunli.FileSystem.RegularFileObject;
+import com.shunli.LexicalSystem.name.Names;
+import com.shunli.LexicalSystem.name.Table;
+import com.shunli.LexicalSystem.token.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 在 ForkJoinPool 上并行地对多个编译单元做词法分析。
+ * 所有线程共用同一个 Names/Tokens 和名称表, 同名标识符在所有文件中都是同一个 Name。
+ */
+public class BatchTokenizer {
+
+    private final ForkJoinPool pool;
+
+    public BatchTokenizer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchTokenizer(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public Result tokenize(List<RegularFileObject> files) {
+        return tokenize(files, Names.instance().table);
+    }
+
+    //所有文件的标识符都登记到 table 中, 例如一次编译的会话表
+    public Result tokenize(List<RegularFileObject> files, final Table table) {
+        List<Callable<FileResult>> tasks = new ArrayList<>(files.size());
+        for (final RegularFileObject file : files) {
+            tasks.add(new Callable<FileResult>() {
+                @Override
+                public FileResult call() {
+                    long start = System.nanoTime();
+                    ReaderHelper reader = new ReaderHelper(file);
+                    reader.setNameTable(table);
+                    TokenBuffer tokens = new JavaTokenizer(reader).readAllTokens();
+                    return new FileResult(file, tokens, reader.buflen, System.nanoTime() - start);
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        List<FileResult> results = new ArrayList<>(files.size());
+        try {
+            for (Future<FileResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return new Result(results, System.nanoTime() - start);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    //单个文件的结果和耗时
+    public static class FileResult {
+        public final RegularFileObject file;
+        public final TokenBuffer tokens;
+        public final int chars;
+        public final long nanos;
+
+        FileResult(RegularFileObject file, TokenBuffer tokens, int chars, long nanos) {
+            this.file = file;
+            this.tokens = tokens;
+            this.chars = chars;
+            this.nanos = nanos;
+        }
+
+        public double tokensPerSecond() {
+            return tokens.size() * 1e9 / Math.max(nanos, 1);
+        }
+
+        public double charsPerSecond() {
+            return chars * 1e9 / Math.max(nanos, 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d tokens, %d chars, %.3f ms, %.0f tokens/s, %.2f Mchars/s",
+                    file.getName(), tokens.size(), chars, nanos / 1e6, tokensPerSecond(), charsPerSecond() / 1e6);
+        }
+    }
+
+    //整批文件的结果, 吞吐量按墙钟时间计算
+    public static class Result {
+        public final List<FileResult> files;
+        public final long wallNanos;
+
+        Result(List<FileResult> files, long wallNanos) {
+            this.files = files;
+            this.wallNanos = wallNanos;
+        }
+
+        public long totalTokens() {
+            long total = 0;
+            for (FileResult f : files) {
+                total += f.tokens.size();
+            }
+            return total;
+        }
+
+        public long totalChars() {
+            long total = 0;
+            for (FileResult f : files) {
+                total += f.chars;
+            }
+            return total;
+        }
+
+        public double tokensPerSecond() {
+            return totalTokens() * 1e9 / Math.max(wallNanos, 1);
+        }
+
+        public double charsPerSecond() {
+            return totalChars() * 1e9 / Math.max(wallNanos, 1);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (FileResult f : files) {
+                sb.append(f).append('\n');
+            }
+            sb.append(String.format("total: %d files, %d tokens, %d chars, %.3f ms, %.0f tokens/s, %.2f Mchars/s",
+                    files.size(), totalTokens(), totalChars(), wallNanos / 1e6, tokensPerSecond(), charsPerSecond() / 1e6));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.shunli.LexicalSystem;
+
+import com.shunli.LexicalSystem.token.TokenBuffer;
+
+/**
+ * 文件被编辑后, 只重新扫描受影响的区域。
+ * 从编辑位置之前最近的安全位置(某个旧 token 的起点)开始扫描,
+ * 一旦新 token 的起点与编辑区域之后某个旧 token 的起点重合, 之后的 token 流必然相同,
+ * 直接平移旧 token 的位置拼接上去。扫描量只与被破坏的区域有关, 与文件大小无关。
+ * 字符模式和字节模式(Utf8ReaderHelper)的源文件都可以, 编辑位置与 token 的位置使用同一种单位。
+ */
+public class IncrementalTokenizer {
+
+    /**
+     * @param previous      编辑前的 token 流
+     * @param offset        编辑的起始位置
+     * @param removedLength 删除的长度(字节模式下为字节数)
+     * @param inserted      插入的文本
+     * @return 编辑后的 token 流, 其源文件为编辑后的文本
+     */
+    public static TokenBuffer relex(TokenBuffer previous, int offset, int removedLength, CharSequence inserted) {
+        ReaderHelper oldReader = previous.getSource();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldReader.buflen) {
+            throw new IndexOutOfBoundsException("edit [" + offset + ", " + (offset + removedLength) + ") out of source range");
+        }
+        //编辑后的文本, 与旧 token 共用一张名称表, 旧 token 的名称编号仍然有效
+        ReaderHelper reader = oldReader.edit(offset, removedLength, inserted);
+        int delta = reader.buflen - oldReader.buflen;
+
+        //第一个结束位置不早于编辑位置的 token 可能被改变, 再退一个 token 作为重新扫描的起点,
+        //这样与编辑位置相邻的 token 也能正确合并
+        //编辑位置之前没有 token 时只能从头开始
+        int damaged = firstTokenEndingAtOrAfter(previous, offset);
+        int restart = Math.max(damaged - 1, 0);
+
+        TokenBuffer result = new TokenBuffer(reader, previous.size() + 16);
+        result.addAll(previous, 0, restart, 0);
+
+        JavaTokenizer tokenizer = new JavaTokenizer(reader);
+        reader.reset(damaged > 0 ? previous.pos(restart) : 0);
+
+        int newEditEnd = offset + removedLength + delta;
+        int old = damaged;
+        while (tokenizer.scanToken()) {
+            if (tokenizer.pos >= newEditEnd) {
+                //编辑区域之后的文本没有变化, 与旧 token 起点重合即重新同步
+                int oldPos = tokenizer.pos - delta;
+                while (old < previous.size() && previous.pos(old) < oldPos) {
+                    old++;
+                }
+                if (old < previous.size() && previous.pos(old) == oldPos) {
+                    result.addAll(previous, old, previous.size(), delta);
+                    return result;
+                }
+            }
+            result.add(tokenizer.tk, tokenizer.pos, tokenizer.endPos, tokenizer.name, tokenizer.literal());
+        }
+        return result;
+    }
+
+    //二分查找第一个 endPos >= offset 的 token, 没有时返回 token 个数
+    private static int firstTokenEndingAtOrAfter(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens.endPos(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -27,163 +27,204 @@ package com.shunli.LexicalSystem;
 
 
 import com.shunli.LexicalSystem.name.Name;
+import com.shunli.LexicalSystem.name.Table;
 import com.shunli.LexicalSystem.token.*;
 import com.shunli.utils.Log;
 import org.jetbrains.annotations.Nullable;
 
-import java.nio.CharBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import javax.tools.JavaFileObject;
 
+import static com.shunli.LexicalSystem.LayoutCharacters.*;
 import static com.shunli.LexicalSystem.ReaderHelper.EOF;
 
 
 public class JavaTokenizer {
 
-    private ArrayList<Token> tokenQueue = new ArrayList<Token>();
+    protected ReaderHelper reader;
 
+    //关键字表, 通过 Name 的索引直接得到 TokenKind
+    protected final Tokens tokens;
 
-    protected ReaderHelper reader;
+    //运算符和标点符号的状态表
+    protected final OperatorTable operators;
+
+    //最近一次扫描到的 token: 种类, 起止位置, 以及标识符/关键字的名称
+    protected TokenKind tk;
+    protected int pos;
+    protected int endPos;
+    protected Name name;
 
     public JavaTokenizer(ReaderHelper readerHelper) {
         this.reader = readerHelper;
+        this.tokens = Tokens.instance();
+        this.operators = OperatorTable.instance();
+    }
+
+    public JavaTokenizer(JavaFileObject file) {
+        this(new ReaderHelper(file));
+    }
+
+    //标识符登记到指定的名称表, 例如编译服务中每次编译各自的会话表
+    public JavaTokenizer(JavaFileObject file, Table table) {
+        this(new ReaderHelper(file));
+        reader.setNameTable(table);
     }
 
     //读取一个新的token
     @Nullable
     public Token readToken() {
-        reader.sp = 0;
-
-        int startPos;
-        int endPos;
-
-
-        char ch = reader.readNewChar();
-
-        if (ch == EOF) {
-            if (reader.readNewLine()) {
-                return readToken();
-            }
+        if (!scanToken()) {
             return null;
         }
+        switch (tk) {
+            case INTLITERAL:
+                return new IntNumToken(reader, pos, endPos, reader.intValue(pos, endPos));
+            case FLOATLITERAL:
+                return new FloatNumToken(reader, pos, endPos);
+            case CHARLITERAL:
+            case STRINGLITERAL:
+                return new StrToken(tk, reader, pos, endPos);
+            default:
+                if (name != null) {
+                    return new IdToken(tk, reader, pos, endPos, name);
+                }
+                return new SpecialCharToken(tk, reader, pos, endPos);
+        }
+    }
 
+    /**
+     * 一次性读取剩下的所有 token, 保存在几个基本类型数组中,
+     * 整个过程不为单个 token 创建对象
+     */
+    public TokenBuffer readAllTokens() {
+        TokenBuffer buffer = new TokenBuffer(reader, reader.buflen / 4 + 16);
+        while (scanToken()) {
+            buffer.add(tk, pos, endPos, name, literal());
+        }
+        return buffer;
+    }
 
-        //空白case, 直接过滤
-        if (ch == ' ' | ch == '\t') {
-            do {
-                reader.readNewChar();
-            } while (reader.ch == ' ' || reader.ch == '\t');
+    //字面量槽位: 整数字面量的值, 与 readToken 一样解析; 其他 token 为 0
+    int literal() {
+        return tk == TokenKind.INTLITERAL ? reader.intValue(pos, endPos) : 0;
+    }
+
+    /**
+     * 扫描下一个 token, 结果保存在 tk, pos, endPos, name 中
+     *
+     * @return 已经到达文件末尾时返回 false
+     */
+    protected boolean scanToken() {
+        reader.sp = 0;
+        name = null;
+
+        //空白和换行, 直接过滤
+        loop:
+        while (true) {
+            switch (reader.readNewChar()) {
+                case ' ':
+                case '\t':
+                case FF:
+                case LF:
+                case CR:
+                    break;
+                case EOF:
+                    //只有 buflen 处的哨兵才是文件末尾, 源文件中真正的 '\0' 作为一个错误 token
+                    if (reader.atEnd()) {
+                        return false;
+                    }
+                    return literal(TokenKind.ERROR, reader.bp, reader.bp + 1);
+                default:
+                    break loop;
+            }
         }
 
-        if (LexicalAnalyzerUtil.isLetter(reader.ch)) { // ID识别
-            startPos = reader.bp;
+        pos = reader.bp;
+        if (LexicalAnalyzerUtil.isIdentifierStart(reader.ch)) { // ID识别
             do {
                 reader.readNewChar();
-            } while (LexicalAnalyzerUtil.isLetterOrNum(reader.ch));
-            reader.unReadChar();
+            } while (LexicalAnalyzerUtil.isIdentifierPart(reader.ch));
+            //结束位置为下一个字符的起点, 字节模式下最后一个字符可能占多个字节
             endPos = reader.bp;
-            return new IdToken(1, reader.getString(startPos, endPos));
+            reader.unReadChar();
+            name = reader.name(pos, endPos);
+            tk = tokens.lookupKind(name);
+            return true;
         } else if (LexicalAnalyzerUtil.isNum(reader.ch)) { // 数字识别
-            startPos = reader.bp;
+            boolean isFloat = false;
             do {
                 reader.readNewChar();
-            } while (LexicalAnalyzerUtil.isLetterOrNum(reader.ch) || reader.ch == '.');
-            reader.unReadChar();
+                isFloat |= reader.ch == '.';
+            } while (LexicalAnalyzerUtil.isIdentifierPart(reader.ch) || reader.ch == '.');
             endPos = reader.bp;
-            String string = reader.getString(startPos, endPos);
-            if (string.contains(".")) {
-                float num = LexicalAnalyzerUtil.stringToFloatNum(string);
-                return new FloatNumToken(1, num);
-            } else {
-                int num = LexicalAnalyzerUtil.stringToNum(string);
-                return new IntNumToken(1, num);
-            }
+            reader.unReadChar();
+            tk = isFloat ? TokenKind.FLOATLITERAL : TokenKind.INTLITERAL;
+            return true;
         } else { //剩下的肯定就是特殊符号了
             return handlerSpecialChar();
         }
     }
 
-    @Nullable
-    private Token handlerSpecialChar() {
-        String boundaryChar = "[](){}:,.;";
+    private boolean handlerSpecialChar() {
+        int startPos = reader.bp;
         //TODO 转义符
-        if (boundaryChar.contains("" + reader.ch)) {
-            return new SpecialCharToken(1, reader.ch);
-        }
-        int startPos = 0;
-        int endPos = 0;
 
-        // 单引号和双引号
+        // 单引号和双引号, 字面量的范围包含两边的引号
         if (reader.ch == '\'') {
             if (reader.peek() == '\'') {
                 throw new RuntimeException(" 不能两个' 连着用");
             }
-            char c = reader.readNewChar();
+            reader.readNewChar();
             if (reader.readNewChar() != '\'') {
                 throw new RuntimeException(" 两个' 之间只能有一个char");
             }
-            return new StrToken(1, "" + c);
+            return literal(TokenKind.CHARLITERAL, startPos, reader.bp + 1);
         }
 
         if (reader.ch == '\"') {
-            startPos = reader.bp + 1;
             do {
                 reader.readNewChar();
+                if (reader.atEnd() || reader.ch == LF || reader.ch == CR) {
+                    throw new RuntimeException("字符串没有结束");
+                }
             } while (reader.ch != '\"');
-            endPos = reader.bp - 1;
-            return new IdToken(1, reader.getString(startPos, endPos));
+            return literal(TokenKind.STRINGLITERAL, startPos, reader.bp + 1);
         }
 
-
-        //+-三种情况: [+ ++ +=] [- -- -=]
-        if (reader.ch == '+' || reader.ch == '-') {
-            char nextChar = reader.peek();
-            if (nextChar == '+' || nextChar == '=') {
-                char c = reader.readNewChar();
-                return new SpecialCharToken(1, "" + reader.ch + c);
-            }
-            return new SpecialCharToken(1, reader.ch);
-        }
-        //*只有两种case: * *=
-        // TODO 多行注释
-        // %= %s等
-        if (reader.ch == '*') {
-            if (reader.peek() == '=') {
-                char c = reader.readNewChar();
-                return new SpecialCharToken(1, "" + reader.ch + c);
-            }
-            return new SpecialCharToken(1, reader.ch);
-        }
         //除法, 会遇到注释的情况
         if (reader.ch == '/') {
             if (reader.peek() == '/') {
-                reader.readNewLine();
-                return readToken();
+                reader.skipLine();
+                return scanToken();
             }
-            return new SpecialCharToken(1, reader.ch);
-        }
-
-        // == 和 !=
-        if (reader.ch == '=' || reader.ch == '!') {
-            if (reader.peek() == '=') {
-                char c = reader.readNewChar();
-                return new SpecialCharToken(1, "" + reader.ch + c);
+            if (reader.peek() == '*') {
+                reader.readNewChar();
+                do {
+                    reader.readNewChar();
+                    if (reader.atEnd()) {
+                        throw new RuntimeException("注释没有结束");
+                    }
+                } while (reader.ch != '*' || reader.peek() != '/');
+                reader.readNewChar();
+                return scanToken();
             }
-            return new SpecialCharToken(1, reader.ch);
         }
 
-        // > >= 和 < <=
-        if (reader.ch == '>' || reader.ch == '<') {
-            if (reader.peek() == '=') {
-                char c = reader.readNewChar();
-                return new SpecialCharToken(1, "" + reader.ch + c);
-            }
-            return new SpecialCharToken(1, reader.ch);
+        //其余的都是运算符和标点符号, 交给状态表按最长匹配识别
+        int state = reader.matchOperator(operators, startPos);
+        if (state == 0) {
+            throw new RuntimeException("handlerSpecialChar error, char is " + reader.ch);
         }
-
-
-        throw new RuntimeException("handlerSpecialChar error, char is " + reader.ch);
-//        return null;
+        int endPos = startPos + operators.length(state);
+        reader.jumpTo(endPos - 1);
+        return literal(operators.kind(state), startPos, endPos);
     }
 
+    //字面量和符号没有名称, 只记录种类和位置
+    private boolean literal(TokenKind kind, int startPos, int endPos) {
+        this.tk = kind;
+        this.pos = startPos;
+        this.endPos = endPos;
+        return true;
+    }
 }
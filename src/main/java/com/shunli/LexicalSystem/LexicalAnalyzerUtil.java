@@ -2,32 +2,57 @@ package com.shunli.LexicalSystem;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.charset.StandardCharsets;
+
 public class LexicalAnalyzerUtil {
 
+    //ASCII 字符的分类表, 每个字符一个字节, 按位表示所属的类别
+    private static final int ASCII = 128;
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte IDENTIFIER_START = 4;
+    private static final byte IDENTIFIER_PART = 8;
+    private static final byte OPERATOR = 16;
+
+    private static final byte[] charClass = new byte[ASCII];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            charClass[c] |= LETTER | IDENTIFIER_START | IDENTIFIER_PART;
+            charClass[Character.toUpperCase(c)] |= LETTER | IDENTIFIER_START | IDENTIFIER_PART;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            charClass[c] |= DIGIT | IDENTIFIER_PART;
+        }
+        charClass['_'] |= IDENTIFIER_START | IDENTIFIER_PART;
+        charClass['$'] |= IDENTIFIER_START | IDENTIFIER_PART;
+        for (char c : "!%&*?+-:<=>^|~@".toCharArray()) {
+            charClass[c] |= OPERATOR;
+        }
+    }
+
     // 判断是否为字母
     public static boolean isLetter(char c) {
-        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+        return c < ASCII && (charClass[c] & LETTER) != 0;
     }
 
     public static boolean isLetterOrNum(char c) {
-        return isLetter(c) || isNum(c);
+        return c < ASCII && (charClass[c] & (LETTER | DIGIT)) != 0;
     }
 
 
     public static boolean isNum(char c) {
-        return (c >= '0') && (c <= '9');
+        return c < ASCII && (charClass[c] & DIGIT) != 0;
     }
 
+    //能否作为 Java 标识符的开头, 非 ASCII 字符交给 Character 判断
+    public static boolean isIdentifierStart(char c) {
+        return c < ASCII ? (charClass[c] & IDENTIFIER_START) != 0 : Character.isJavaIdentifierStart(c);
+    }
 
-    // 判断是否为关键字，若是则返回关键字种别码
-    public static int isKeyID(String str) {
-        String keystr[] = {"char", "short", "int", "long", "float", "double", "final", "static", "if", "else", "while", "do", "for", "break", "continue", "void", "return"};
-        for (int i = 0; i < keystr.length; i++) {
-            if (str.equals(keystr[i])) {
-                return i + 1;
-            }
-        }
-        return 0;
+    //能否作为 Java 标识符的一部分, 非 ASCII 字符交给 Character 判断
+    public static boolean isIdentifierPart(char c) {
+        return c < ASCII ? (charClass[c] & IDENTIFIER_PART) != 0 : Character.isJavaIdentifierPart(c);
     }
 
 
@@ -63,27 +88,7 @@ public class LexicalAnalyzerUtil {
      * Return true if reader.ch can be part of an operator.
      */
     public static boolean isSpecialChar(char ch) {
-        char[] specialChar = new char[]{'!', '%'};
-        switch (ch) {
-            case '!':
-            case '%':
-            case '&':
-            case '*':
-            case '?':
-            case '+':
-            case '-':
-            case ':':
-            case '<':
-            case '=':
-            case '>':
-            case '^':
-            case '|':
-            case '~':
-            case '@':
-                return true;
-            default:
-                return false;
-        }
+        return ch < ASCII && (charClass[ch] & OPERATOR) != 0;
     }
 
     public static float stringToFloatNum(String string) {
@@ -93,4 +98,36 @@ public class LexicalAnalyzerUtil {
     public static int stringToNum(String string) {
         return Integer.parseInt(string);
     }
+
+    //直接从字符数组 buf[start, end) 中解析十进制整数, 不生成中间的 String, 数字间的 '_' 被忽略
+    public static int charsToNum(char[] buf, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            if (buf[i] == '_') {
+                continue;
+            }
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9 || result > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + new String(buf, start, end - start) + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    //同上, 从 utf8 字节 buf[start, end) 中解析
+    public static int bytesToNum(byte[] buf, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            if (buf[i] == '_') {
+                continue;
+            }
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9 || result > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + new String(buf, start, end - start, StandardCharsets.UTF_8) + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
 }
@@ -0,0 +1,103 @@
+package com.shunli.LexicalSystem;
+
+import java.util.Arrays;
+
+import static com.shunli.LexicalSystem.LayoutCharacters.*;
+
+/**
+ * 源文件中每一行的起始位置表, 用来把字符偏移量换算成行号和列号。
+ * token 只记录起始偏移量, 只有在真正需要行号时才会查询这张表(二分查找);
+ * 表本身随查询的位置逐步向后扩展, 整个文件最多只扫描一遍。
+ */
+public class LineMap {
+
+    private final char[] buf;
+    //字节模式(Utf8ReaderHelper)下的输入, 与 buf 二者只有一个不为 null
+    private final byte[] bytes;
+    private final int buflen;
+
+    //startPosition[i] 为第 i + 1 行的起始位置
+    private int[] startPosition = new int[64];
+    private int lineCount = 1;
+
+    //已经统计过行号的位置, 在它之前的换行都已经记录在表中
+    private int scannedPos = 0;
+
+    public LineMap(char[] buf, int buflen) {
+        this.buf = buf;
+        this.bytes = null;
+        this.buflen = buflen;
+    }
+
+    //位置为 utf8 字节偏移量, 列号仍按 char 计算, 与字符模式一致
+    public LineMap(byte[] bytes, int buflen) {
+        this.buf = null;
+        this.bytes = bytes;
+        this.buflen = buflen;
+    }
+
+    //pos 所在的行号, 从 1 开始
+    public int getLineNumber(int pos) {
+        extendTo(pos);
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (startPosition[mid] <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    //pos 所在的列号, 从 1 开始
+    public int getColumnNumber(int pos) {
+        int lineStart = startPosition[getLineNumber(pos) - 1];
+        if (bytes == null) {
+            return pos - lineStart + 1;
+        }
+        //不计 utf8 的后续字节 10xxxxxx; 4 字节序列是增补字符, 在 char[] 中占两个 char
+        int column = 1;
+        for (int i = lineStart; i < pos; i++) {
+            int b = bytes[i] & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                column += (b & 0xf8) == 0xf0 ? 2 : 1;
+            }
+        }
+        return column;
+    }
+
+    //第 line 行的起始位置, 超出文件的行返回 -1
+    public int getStartPosition(int line) {
+        if (line > lineCount) {
+            extendTo(buflen);
+        }
+        return line >= 1 && line <= lineCount ? startPosition[line - 1] : -1;
+    }
+
+    //把行表扩展到 pos 为止
+    private void extendTo(int pos) {
+        int end = Math.min(pos, buflen);
+        int i = scannedPos;
+        while (i < end) {
+            char c = charAt(i++);
+            if (c == CR && i < buflen && charAt(i) == LF) {
+                i++;
+            }
+            if (c == CR || c == LF) {
+                if (lineCount == startPosition.length) {
+                    startPosition = Arrays.copyOf(startPosition, lineCount * 2);
+                }
+                startPosition[lineCount++] = i;
+            }
+        }
+        scannedPos = Math.max(scannedPos, i);
+    }
+
+    //换行符都是 ASCII, 字节模式下非 ASCII 字节不会被当成换行
+    private char charAt(int i) {
+        return buf != null ? buf[i] : (char) (bytes[i] & 0xff);
+    }
+}
@@ -0,0 +1,106 @@
+package com.shunli.LexicalSystem;
+
+import com.shunli.LexicalSystem.token.TokenKind;
+
+import java.util.Arrays;
+
+/**
+ * 识别运算符和标点符号的状态表(DFA), 启动时由 TokenKind 中所有符号的名字生成。
+ * 每个状态对应某个符号的一个前缀, 读入一个字符只需要查一次数组;
+ * 按最长匹配原则识别, 例如 ">>>=" 不会被拆成 ">>" 和 ">="。
+ */
+public class OperatorTable {
+
+    //只有 ASCII 字符可能出现在符号中
+    private static final int ASCII = 128;
+
+    private static OperatorTable instance = null;
+
+    public static synchronized OperatorTable instance() {
+        if (instance == null) {
+            instance = new OperatorTable();
+        }
+        return instance;
+    }
+
+    //transitions[state * ASCII + c] 为下一个状态, 0 表示没有转移(初始状态 0 不会作为转移目标)
+    private int[] transitions;
+
+    //每个状态能接受的符号, 只是某个符号的前缀(例如 "..")时为 null
+    private TokenKind[] accept;
+
+    //每个状态对应的前缀长度
+    private int[] length;
+
+    //已经使用的状态数
+    private int states = 1;
+
+    protected OperatorTable() {
+        transitions = new int[16 * ASCII];
+        accept = new TokenKind[16];
+        length = new int[16];
+        for (TokenKind t : TokenKind.values()) {
+            if (t.name != null && !t.name.isEmpty() && !Character.isJavaIdentifierStart(t.name.charAt(0))) {
+                enter(t.name, t);
+            }
+        }
+    }
+
+    private void enter(String operator, TokenKind kind) {
+        int state = 0;
+        for (int i = 0; i < operator.length(); i++) {
+            int index = state * ASCII + operator.charAt(i);
+            if (transitions[index] == 0) {
+                if (states == accept.length) {
+                    transitions = Arrays.copyOf(transitions, states * 2 * ASCII);
+                    accept = Arrays.copyOf(accept, states * 2);
+                    length = Arrays.copyOf(length, states * 2);
+                }
+                length[states] = i + 1;
+                transitions[index] = states++;
+            }
+            state = transitions[index];
+        }
+        accept[state] = kind;
+    }
+
+    /**
+     * 从 buf[start] 开始按最长匹配识别一个符号
+     *
+     * @return 匹配到的状态, 用 kind()/length() 取得结果; 没有匹配时返回 0
+     */
+    public int match(char[] buf, int start) {
+        int matched = 0;
+        int state = 0;
+        char c;
+        int i = start;
+        while ((c = buf[i++]) < ASCII && (state = transitions[state * ASCII + c]) != 0) {
+            if (accept[state] != null) {
+                matched = state;
+            }
+        }
+        return matched;
+    }
+
+    //同上, 输入为 utf8 字节; 非 ASCII 字节为负数, 不会出现在符号中
+    public int match(byte[] buf, int start) {
+        int matched = 0;
+        int state = 0;
+        byte c;
+        int i = start;
+        while ((c = buf[i++]) >= 0 && (state = transitions[state * ASCII + c]) != 0) {
+            if (accept[state] != null) {
+                matched = state;
+            }
+        }
+        return matched;
+    }
+
+    public TokenKind kind(int state) {
+        return accept[state];
+    }
+
+    public int length(int state) {
+        return length[state];
+    }
+}
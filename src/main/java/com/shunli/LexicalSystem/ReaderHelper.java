@@ -26,20 +26,28 @@
 package com.shunli.LexicalSystem;
 
 
+import com.shunli.FileSystem.RegularFileObject;
+import com.shunli.LexicalSystem.name.Name;
 import com.shunli.LexicalSystem.name.Names;
+import com.shunli.LexicalSystem.name.Table;
 
 
-import java.io.*;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
 import java.nio.CharBuffer;
 import java.util.Arrays;
 
+import static com.shunli.LexicalSystem.LayoutCharacters.*;
+
 
 /**
  * javac 词法分析器/标记器使用的字符读取器。 返回输入流中包含的字符序列，相应地处理Unicode
+ * 整个源文件一次性读入一个连续的 char[], bp 即为字符在文件中的绝对偏移量
  */
 public class ReaderHelper {
     public static final char EOF = '\u0000';
-    //输入缓冲区
+    //输入缓冲区, buf[buflen] 固定为哨兵字符 EOF
     protected char[] buf;
     protected int bp;
     protected int buflen;
@@ -52,69 +60,188 @@ public class ReaderHelper {
 
     protected Names names;
 
+    //登记标识符使用的名称表, 默认为 names.table, 编译服务中可以换成会话表
+    protected Table table;
+
+    //行号表, 第一次需要行号时才创建
+    protected LineMap lineMap;
+
     //用于保存字符的字符缓冲区。
     protected char[] sbuf = new char[128];
     protected int sp;
 
-    //BufferedReader是可以按行读取文件
-    BufferedReader bufferedReader;
 
+    //子类自己保存输入, 例如 Utf8ReaderHelper 直接读取字节
+    protected ReaderHelper() {
+        bp = -1;
+        names = Names.instance();
+        table = names.table;
+    }
 
     public ReaderHelper(String filePath) {
-        try {
-            FileInputStream inputStream = new FileInputStream(filePath);
-            bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-            readNewLine();
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
+        this(new RegularFileObject(new File(filePath)));
+    }
+
+    //内存中的源码、zip 中的文件、缓存的内容都经过 getCharContent 走同一条路径
+    public ReaderHelper(JavaFileObject file) {
+        this(readContent(file));
+    }
+
+    /**
+     * 直接使用 content 的底层数组, 读取 [position, limit) 的字符;
+     * 与 javac 一样, position 不为 0 时先 compact 到数组开头, 没有可用的数组时才复制
+     */
+    public ReaderHelper(CharBuffer content) {
+        this(toArray(content), content.remaining());
+    }
+
+    /**
+     * 直接在 input[0..inputLength) 上读取, 不做拷贝;
+     * 若数组没有多余的位置存放哨兵, 才会复制一次
+     */
+    protected ReaderHelper(char[] input, int inputLength) {
+        if (inputLength == input.length) {
+            input = Arrays.copyOf(input, inputLength + 1);
         }
+        buf = input;
+        buflen = inputLength;
+        buf[buflen] = EOF;
+        bp = -1;
+        names = Names.instance();
+        table = names.table;
     }
 
-    public boolean readNewLine() {
+    private static CharBuffer readContent(JavaFileObject file) {
         try {
-            String str = bufferedReader.readLine();
-            if (str == null) {
-                return false;
-            }
-            buf = str.toCharArray();
-            buflen = str.length();
-            bp = -1;
-
+            CharSequence content = file.getCharContent(false);
+            //RegularFileObject 返回的 CharBuffer 直接使用, 其余的 CharSequence 才包装
+            return content instanceof CharBuffer ? (CharBuffer) content : CharBuffer.wrap(content);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return true;
     }
 
-    //读取下一个字符
+    /**
+     * 返回把 [offset, offset + removedLength) 替换成 inserted 之后的新读取器, 本读取器不变;
+     * 位置的单位与 token 的位置相同, 新读取器使用同一张名称表
+     */
+    protected ReaderHelper edit(int offset, int removedLength, CharSequence inserted) {
+        int insertedLength = inserted.length();
+        int newLength = buflen - removedLength + insertedLength;
+        char[] newBuf = new char[newLength + 1];
+        System.arraycopy(buf, 0, newBuf, 0, offset);
+        for (int i = 0; i < insertedLength; i++) {
+            newBuf[offset + i] = inserted.charAt(i);
+        }
+        System.arraycopy(buf, offset + removedLength, newBuf, offset + insertedLength,
+                buflen - offset - removedLength);
+        ReaderHelper reader = new ReaderHelper(newBuf, newLength);
+        reader.setNameTable(table);
+        return reader;
+    }
+
+    //compact 之后 position 为 0, remaining 即为内容的长度
+    private static char[] toArray(CharBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0) {
+            if (buffer.position() != 0) {
+                buffer.compact().flip();
+            }
+            return buffer.array();
+        }
+        //只读或者偏移的缓冲区, 复制一份并留出哨兵的位置
+        char[] copy = new char[buffer.remaining() + 1];
+        buffer.duplicate().get(copy, 0, buffer.remaining());
+        return copy;
+    }
+
+    //读取下一个字符, 越过末尾后一直返回 EOF
     protected char readNewChar() {
-        if (bp < buflen - 1) {
+        if (bp < buflen) {
             ch = buf[++bp];
             if (ch == '\\') {
 //                convertUnicode();
             }
         } else {
-            bp++;
             ch = EOF;
         }
         return ch;
     }
 
+    //是否已经读到了 buflen 处的哨兵; 源文件中间的 '\0' 与哨兵的值相同, 只能用位置区分
+    public boolean atEnd() {
+        return bp >= buflen;
+    }
+
+    //下一个字符是否就是哨兵
+    protected boolean nextAtEnd() {
+        return bp + 1 >= buflen;
+    }
+
     public void unReadChar() {
         bp--;
         ch = buf[bp];
     }
 
+    public LineMap getLineMap() {
+        if (lineMap == null) {
+            lineMap = new LineMap(buf, buflen);
+        }
+        return lineMap;
+    }
+
+    //从 pos 处重新开始读取, 下一次 readNewChar() 读到的就是 buf[pos]
+    public void reset(int pos) {
+        bp = pos - 1;
+    }
+
+    //直接移动到 newBp 处, 当前字符随之改变
+    public void jumpTo(int newBp) {
+        bp = newBp;
+        ch = buf[bp];
+    }
 
-    public String getString(int startPos, int endPos) {
-        StringBuilder stringBuilder = new StringBuilder(endPos - startPos);
-        for (int i = startPos; i <= endPos; i++) {
-            stringBuilder.append(buf[i]);
+    //跳过当前行剩余的字符, 停在换行符之前
+    public void skipLine() {
+        char c;
+        while ((c = peek()) != LF && c != CR && (c != EOF || !nextAtEnd())) {
+            readNewChar();
         }
-        return stringBuilder.toString();
+    }
+
+    //取出 [startPos, endPos) 之间的文本, 只有真正需要时才会生成 String
+    public String getText(int startPos, int endPos) {
+        return new String(buf, startPos, endPos - startPos);
+    }
+
+    //直接用 buf 中 [startPos, endPos) 的字符在名称表中查找/登记, 不生成中间的 String
+    public Name name(int startPos, int endPos) {
+        return table.fromChars(buf, startPos, endPos - startPos);
+    }
+
+    public void setNameTable(Table table) {
+        this.table = table;
+    }
+
+    public Table getNameTable() {
+        return table;
+    }
+
+    //[startPos, endPos) 的只读视图, 与 buf 共享内容, 不复制字符
+    public CharSequence getChars(int startPos, int endPos) {
+        return CharBuffer.wrap(buf, startPos, endPos - startPos).asReadOnlyBuffer();
     }
 
     public char peek() {
-        return buf[bp + 1];
+        return bp < buflen ? buf[bp + 1] : EOF;
+    }
+
+    //从 start 开始按最长匹配识别一个运算符, 返回 OperatorTable 的状态
+    public int matchOperator(OperatorTable operators, int start) {
+        return operators.match(buf, start);
+    }
+
+    //[startPos, endPos) 中十进制整数的值
+    public int intValue(int startPos, int endPos) {
+        return LexicalAnalyzerUtil.charsToNum(buf, startPos, endPos);
     }
 }
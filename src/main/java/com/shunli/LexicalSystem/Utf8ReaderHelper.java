@@ -0,0 +1,239 @@
+package com.shunli.LexicalSystem;
+
+import com.shunli.FileSystem.FileUtil;
+import com.shunli.FileSystem.RegularFileObject;
+import com.shunli.LexicalSystem.name.Name;
+
+import javax.tools.JavaFileObject;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接在 utf8 字节上做词法分析, 不把整个文件解码成 char[]。
+ * bp、buflen 以及 token 的位置都是字节偏移量, bp 指向当前字符的第一个字节;
+ * ASCII 字节原样作为当前字符, 多字节序列才解码成一个 char 交给 JavaTokenizer 判断。
+ * 标识符的字节直接交给 Table.fromUtf 登记, 名称表内部本来就保存 utf8, 省去一次编码。
+ * 4 字节序列(增补字符)的当前字符为其高代理, 与字符模式下一样不能出现在标识符中。
+ */
+public class Utf8ReaderHelper extends ReaderHelper {
+
+    //输入缓冲区, bytes[buflen] 固定为哨兵 0
+    protected byte[] bytes;
+
+    //当前字符占用的字节数
+    protected int width = 1;
+
+    //文件的 utf8 字节经 FileUtil 一次读入, 不解码
+    public Utf8ReaderHelper(JavaFileObject file) {
+        this(readContent(file));
+    }
+
+    /**
+     * 直接使用 content 的底层数组, 读取 [position, limit) 的字节;
+     * 与 ReaderHelper(CharBuffer) 一样, position 不为 0 时先 compact 到数组开头, 没有可用的数组时才复制
+     */
+    public Utf8ReaderHelper(ByteBuffer content) {
+        this(toArray(content), content.remaining());
+    }
+
+    /**
+     * 直接在 input[0..inputLength) 上读取, 不做拷贝;
+     * 若数组没有多余的位置存放哨兵, 才会复制一次
+     */
+    public Utf8ReaderHelper(byte[] input, int inputLength) {
+        if (inputLength == input.length) {
+            byte[] copy = new byte[inputLength + 1];
+            System.arraycopy(input, 0, copy, 0, inputLength);
+            input = copy;
+        }
+        bytes = input;
+        buflen = inputLength;
+        bytes[buflen] = EOF;
+    }
+
+    /**
+     * 源文件的编码是 utf8(或者它的子集 ASCII)时在字节上分析, 否则解码成字符, 退回到 ReaderHelper。
+     * 只有磁盘上的文件才有可以直接使用的字节, 其他 JavaFileObject 同样退回
+     */
+    public static ReaderHelper open(JavaFileObject file) {
+        Charset charset = Charset.forName(FileUtil.getEncodingName());
+        if (file instanceof RegularFileObject
+                && (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII))) {
+            return new Utf8ReaderHelper(file);
+        }
+        return new ReaderHelper(file);
+    }
+
+    //FileInputStream 按文件大小一次读入; 得到的缓冲区由读取器继续使用, 不再归还给 FileUtil
+    private static ByteBuffer readContent(JavaFileObject file) {
+        try (InputStream in = file.openInputStream()) {
+            return in instanceof FileInputStream
+                    ? FileUtil.makeByteBuffer((FileInputStream) in)
+                    : FileUtil.makeByteBuffer(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //compact 之后 position 为 0, remaining 即为内容的长度
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0) {
+            if (buffer.position() != 0) {
+                buffer.compact().flip();
+            }
+            return buffer.array();
+        }
+        //只读、偏移或者直接缓冲区, 复制一份并留出哨兵的位置
+        byte[] copy = new byte[buffer.remaining() + 1];
+        buffer.duplicate().get(copy, 0, buffer.remaining());
+        return copy;
+    }
+
+    //插入的文本编码成 utf8 后拼接, offset 和 removedLength 都是字节偏移
+    @Override
+    protected ReaderHelper edit(int offset, int removedLength, CharSequence inserted) {
+        byte[] insertedBytes = inserted.toString().getBytes(StandardCharsets.UTF_8);
+        int newLength = buflen - removedLength + insertedBytes.length;
+        byte[] newBytes = new byte[newLength + 1];
+        System.arraycopy(bytes, 0, newBytes, 0, offset);
+        System.arraycopy(insertedBytes, 0, newBytes, offset, insertedBytes.length);
+        System.arraycopy(bytes, offset + removedLength, newBytes, offset + insertedBytes.length,
+                buflen - offset - removedLength);
+        Utf8ReaderHelper reader = new Utf8ReaderHelper(newBytes, newLength);
+        reader.setNameTable(table);
+        return reader;
+    }
+
+    @Override
+    protected char readNewChar() {
+        if (bp < buflen) {
+            bp += width;
+            decode();
+        } else {
+            ch = EOF;
+        }
+        return ch;
+    }
+
+    //退回到上一个字符的第一个字节
+    @Override
+    public void unReadChar() {
+        bp--;
+        while (bp > 0 && (bytes[bp] & 0xc0) == 0x80) {
+            bp--;
+        }
+        decode();
+    }
+
+    @Override
+    public void reset(int pos) {
+        bp = pos - 1;
+        width = 1;
+    }
+
+    @Override
+    public void jumpTo(int newBp) {
+        bp = newBp;
+        decode();
+    }
+
+    @Override
+    protected boolean nextAtEnd() {
+        return bp + width >= buflen;
+    }
+
+    @Override
+    public char peek() {
+        if (bp >= buflen) {
+            return EOF;
+        }
+        int next = bp + width;
+        byte b = bytes[next];
+        return b >= 0 ? (char) b : charAt(next);
+    }
+
+    //解码 bp 处的字符, 设置 ch 和 width
+    private void decode() {
+        byte b = bytes[bp];
+        if (b >= 0) {
+            ch = (char) b;
+            width = 1;
+        } else {
+            ch = charAt(bp);
+            width = widthAt(bp);
+        }
+    }
+
+    //p 处多字节序列的长度, 不完整或非法的序列(包括 '\0' 的两字节写法 C0 80)按一个字节算
+    private int widthAt(int p) {
+        int b = bytes[p] & 0xff;
+        int n = b >= 0xf0 && b < 0xf8 ? 4 : b >= 0xe0 ? 3 : b >= 0xc2 ? 2 : 1;
+        if (n > 1 && b < 0xf8) {
+            if (p + n > buflen) {
+                return 1;
+            }
+            for (int i = 1; i < n; i++) {
+                if ((bytes[p + i] & 0xc0) != 0x80) {
+                    return 1;
+                }
+            }
+            return n;
+        }
+        return 1;
+    }
+
+    //p 处多字节序列对应的 char, 增补字符取高代理, 非法序列为 U+FFFD
+    private char charAt(int p) {
+        switch (widthAt(p)) {
+            case 2:
+                return (char) ((bytes[p] & 0x1f) << 6 | bytes[p + 1] & 0x3f);
+            case 3:
+                return (char) ((bytes[p] & 0x0f) << 12 | (bytes[p + 1] & 0x3f) << 6 | bytes[p + 2] & 0x3f);
+            case 4:
+                int cp = (bytes[p] & 0x07) << 18 | (bytes[p + 1] & 0x3f) << 12 | (bytes[p + 2] & 0x3f) << 6 | bytes[p + 3] & 0x3f;
+                return Character.highSurrogate(cp);
+            default:
+                return '\ufffd';
+        }
+    }
+
+    @Override
+    public LineMap getLineMap() {
+        if (lineMap == null) {
+            lineMap = new LineMap(bytes, buflen);
+        }
+        return lineMap;
+    }
+
+    @Override
+    public String getText(int startPos, int endPos) {
+        return new String(bytes, startPos, endPos - startPos, StandardCharsets.UTF_8);
+    }
+
+    //标识符的字节原样登记, 不经过 char
+    @Override
+    public Name name(int startPos, int endPos) {
+        return table.fromUtf(bytes, startPos, endPos - startPos);
+    }
+
+    //需要解码, 不再与输入共享内容
+    @Override
+    public CharSequence getChars(int startPos, int endPos) {
+        return CharBuffer.wrap(getText(startPos, endPos));
+    }
+
+    @Override
+    public int matchOperator(OperatorTable operators, int start) {
+        return operators.match(bytes, start);
+    }
+
+    @Override
+    public int intValue(int startPos, int endPos) {
+        return LexicalAnalyzerUtil.bytesToNum(bytes, startPos, endPos);
+    }
+}
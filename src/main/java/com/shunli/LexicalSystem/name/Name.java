@@ -41,16 +41,35 @@ public abstract class Name implements javax.lang.model.element.Name {
 
     @Override
     public boolean contentEquals(CharSequence cs) {
-        return toString().equals(cs.toString());
+        if (!isAscii()) {
+            return toString().contentEquals(cs);
+        }
+        int len = getByteLength();
+        if (cs.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (cs.charAt(i) != getByteAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    //ASCII 名称的字符就是字节, 不需要解码
     @Override
     public int length() {
-        return toString().length();
+        return isAscii() ? getByteLength() : toString().length();
     }
 
     @Override
     public char charAt(int index) {
+        if (isAscii()) {
+            if (index < 0 || index >= getByteLength()) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return (char) getByteAt(index);
+        }
         return toString().charAt(index);
     }
 
@@ -64,6 +83,8 @@ public abstract class Name implements javax.lang.model.element.Name {
         return Convert.utf2string(getByteArray(), getByteOffset(), getByteLength());
     }
 
+    //名称是否全部由 ASCII 字符组成
+    public abstract boolean isAscii();
 
     //在字符串常量表中的索引值
     public abstract int getIndex();
@@ -2,16 +2,22 @@ package com.shunli.LexicalSystem.name;
 
 public class NameImpl extends Name {
 
-    //下一个Name所在的bucket
-    NameImpl next;
-
-    //Name字节在全局的index
+    //Name在名称表中的编号, 按登记顺序连续分配, TokenKind 的名字占用最小的一段
     int index;
 
+    //Name字节的位置: 页号 << PAGE_SHIFT | 页内偏移
+    int address;
+
     //此Name的length(字节)
     int length;
 
-    public NameImpl(SharedNameTable table) {
+    //所有字节都是 ASCII, 字节与字符一一对应
+    boolean ascii;
+
+    //解码后的字符串, 第一次调用 toString() 时生成
+    private String string;
+
+    public NameImpl(PagedNameTable table) {
         super(table);
     }
 
@@ -27,17 +33,31 @@ public class NameImpl extends Name {
 
     @Override
     public byte getByteAt(int i) {
-        return getByteArray()[index + i];
+        return getByteArray()[getByteOffset() + i];
     }
 
     @Override
     public byte[] getByteArray() {
-        return ((SharedNameTable) table).bytes;
+        return ((PagedNameTable) table).pages[address >>> PagedNameTable.PAGE_SHIFT];
     }
 
     @Override
     public int getByteOffset() {
-        return index;
+        return address & PagedNameTable.OFFSET_MASK;
+    }
+
+    @Override
+    public boolean isAscii() {
+        return ascii;
+    }
+
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            string = s = super.toString();
+        }
+        return s;
     }
 
     @Override
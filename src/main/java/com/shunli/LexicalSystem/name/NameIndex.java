@@ -0,0 +1,342 @@
+package com.shunli.LexicalSystem.name;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 名称表上的查询索引, 供符号补全等工具按前缀、后缀或驼峰缩写列出已登记的名称。
+ * 索引只保存名称的编号, 按三种顺序排列: 字节顺序(前缀)、从后往前的字节顺序(后缀)、驼峰首字母(缩写)。
+ * 新登记的名称先放在未排序的尾部, 查询时逐个检查; 尾部超过 MAX_PENDING 个后, 下一次查询才把它排序并合并进来,
+ * 已排序的部分只需要二分查找加顺序扫描。
+ * 建立索引时的 add 和第一次 flush 在名称表的锁外进行, 之后的 add 和查询都在名称表的锁内调用。
+ */
+class NameIndex {
+
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+    private static final int HUMPS = 2;
+
+    private final PagedNameTable table;
+
+    //按三种顺序排好的名称编号, 长度都是 sortedSize
+    private final int[][] sorted = new int[3][];
+    private int sortedSize = 0;
+
+    //还没有合并进 sorted 的名称编号, 超过 MAX_PENDING 个时才合并, 合并一次要复制整个索引
+    private static final int MAX_PENDING = 4096;
+    private int[] pending = new int[64];
+    private int pendingSize = 0;
+
+    //每个名称的驼峰首字母(转为大写)依次存放在 humps 中, 第 i 个名称占 [humpStart[i], humpStart[i + 1])
+    private byte[] humps = new byte[256];
+    private int[] humpStart = new int[65];
+    private int humpCount = 0;
+
+    //每个名称在三种顺序下的前 8 个字节, 排序时先比较它们, 相同时才去比较完整的字节
+    private final long[][] keys = new long[3][64];
+
+    NameIndex(PagedNameTable table) {
+        this.table = table;
+        for (int i = 0; i < 3; i++) {
+            sorted[i] = new int[0];
+        }
+    }
+
+    //名称表每登记一个名称调用一次, id 为名称的登记顺序
+    void add(int id) {
+        NameImpl n = table.entry(id);
+        byte[] bytes = n.getByteArray();
+        int offset = n.getByteOffset();
+        if (humpCount + 1 == humpStart.length) {
+            humpStart = Arrays.copyOf(humpStart, humpStart.length * 2);
+        }
+        int start = humpStart[humpCount];
+        if (start + n.length > humps.length) {
+            humps = Arrays.copyOf(humps, Math.max(humps.length * 2, start + n.length));
+        }
+        int end = start;
+        for (int i = 0; i < n.length; i++) {
+            if (isHumpStart(bytes, offset, i)) {
+                humps[end++] = upper(bytes[offset + i]);
+            }
+        }
+        humpStart[++humpCount] = end;
+
+        if (id == keys[0].length) {
+            for (int order = 0; order < 3; order++) {
+                keys[order] = Arrays.copyOf(keys[order], id * 2);
+            }
+        }
+        keys[FORWARD][id] = key(bytes, offset, n.length, false);
+        keys[BACKWARD][id] = key(bytes, offset, n.length, true);
+        keys[HUMPS][id] = key(humps, start, end - start, false);
+
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize * 2);
+        }
+        pending[pendingSize++] = id;
+    }
+
+    /**
+     * 以 prefix 开头的名称, 按字节顺序排列, 最多返回 limit 个
+     */
+    List<Name> withPrefix(String prefix, int limit) {
+        return query(FORWARD, prefix.getBytes(StandardCharsets.UTF_8), null, limit);
+    }
+
+    /**
+     * 以 suffix 结尾的名称, 按从后往前的字节顺序排列, 最多返回 limit 个
+     */
+    List<Name> withSuffix(String suffix, int limit) {
+        return query(BACKWARD, suffix.getBytes(StandardCharsets.UTF_8), null, limit);
+    }
+
+    /**
+     * 按驼峰缩写匹配, 例如 "NPE"、"NuPoEx" 都能匹配 NullPointerException:
+     * pattern 在大写字母处分段, 每一段依次是名称中对应一段的前缀(不区分大小写), 名称可以有更多的段
+     */
+    List<Name> matchHumps(String pattern, int limit) {
+        byte[] p = pattern.getBytes(StandardCharsets.UTF_8);
+        if (p.length == 0) {
+            return new ArrayList<>();
+        }
+        int segments = 0;
+        for (int i = 0; i < p.length; i++) {
+            if (isHumpStart(p, 0, i)) {
+                segments++;
+            }
+        }
+        byte[] initials = new byte[segments];
+        for (int i = 0, s = 0; i < p.length; i++) {
+            if (isHumpStart(p, 0, i)) {
+                initials[s++] = upper(p[i]);
+            }
+        }
+        return query(HUMPS, initials, p, limit);
+    }
+
+    /**
+     * 在 order 顺序下找出以 key 开头的名称; pattern 不为 null 时还要逐段匹配驼峰缩写。
+     * 已排序的部分二分查找后顺序扫描, 未排序的尾部逐个检查, 两部分的结果再按顺序合并。
+     */
+    private List<Name> query(int order, byte[] key, byte[] pattern, int limit) {
+        if (pendingSize > MAX_PENDING) {
+            flush();
+        }
+        int[] found = new int[Math.min(limit, sortedSize)];
+        int count = 0;
+        int[] ids = sorted[order];
+        for (int i = lowerBound(order, key); i < sortedSize && count < limit; i++) {
+            if (!inRange(order, ids[i], key)) {
+                break;
+            }
+            if (accept(ids[i], pattern)) {
+                found[count++] = ids[i];
+            }
+        }
+
+        int[] tail = new int[pendingSize];
+        int tailCount = 0;
+        for (int i = 0; i < pendingSize; i++) {
+            if (inRange(order, pending[i], key) && accept(pending[i], pattern)) {
+                tail[tailCount++] = pending[i];
+            }
+        }
+        mergeSort(order, tail, new int[tailCount], 0, tailCount);
+
+        List<Name> result = new ArrayList<>(Math.min(limit, count + tailCount));
+        int i = 0;
+        int j = 0;
+        while (result.size() < limit && (i < count || j < tailCount)) {
+            boolean fromSorted = j == tailCount || (i < count && compare(order, found[i], tail[j]) <= 0);
+            result.add(table.entry(fromSorted ? found[i++] : tail[j++]));
+        }
+        return result;
+    }
+
+    //名称在 order 顺序下是否以 key 开头
+    private boolean inRange(int order, int id, byte[] key) {
+        if (order == HUMPS) {
+            return startsWith(humps, humpStart[id], humpStart[id + 1] - humpStart[id], key);
+        }
+        NameImpl n = table.entry(id);
+        return order == FORWARD
+                ? startsWith(n.getByteArray(), n.getByteOffset(), n.length, key)
+                : endsWith(n.getByteArray(), n.getByteOffset(), n.length, key);
+    }
+
+    private boolean accept(int id, byte[] pattern) {
+        if (pattern == null) {
+            return true;
+        }
+        NameImpl n = table.entry(id);
+        return matchesSegments(n.getByteArray(), n.getByteOffset(), n.length, pattern);
+    }
+
+    //pattern 的每一段是否依次是名称对应段的前缀
+    private static boolean matchesSegments(byte[] bytes, int offset, int length, byte[] p) {
+        int i = 0;
+        int j = 0;
+        while (j < p.length) {
+            //名称中的下一段
+            while (i < length && !isHumpStart(bytes, offset, i)) {
+                i++;
+            }
+            if (i == length) {
+                return false;
+            }
+            //逐字节比较这一段, 直到 pattern 进入下一段
+            do {
+                if (i == length || upper(bytes[offset + i]) != upper(p[j])) {
+                    return false;
+                }
+                i++;
+                j++;
+            } while (j < p.length && !isHumpStart(p, 0, j));
+        }
+        return true;
+    }
+
+    //第一个字符、大写字母、以及 '_' 和 '$' 之后的字符开始新的一段
+    private static boolean isHumpStart(byte[] bytes, int offset, int i) {
+        if (i == 0) {
+            return true;
+        }
+        byte b = bytes[offset + i];
+        byte prev = bytes[offset + i - 1];
+        if (b == '_' || b == '$') {
+            return false;
+        }
+        return (b >= 'A' && b <= 'Z') || prev == '_' || prev == '$';
+    }
+
+    private static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 'a' + 'A') : b;
+    }
+
+    //把新名称排序后合并进三种顺序
+    void flush() {
+        if (pendingSize == 0) {
+            return;
+        }
+        for (int order = 0; order < 3; order++) {
+            int[] fresh = Arrays.copyOf(pending, pendingSize);
+            mergeSort(order, fresh, new int[pendingSize], 0, pendingSize);
+            int[] old = sorted[order];
+            int[] merged = new int[sortedSize + pendingSize];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < sortedSize && j < pendingSize) {
+                merged[k++] = compare(order, old[i], fresh[j]) <= 0 ? old[i++] : fresh[j++];
+            }
+            while (i < sortedSize) {
+                merged[k++] = old[i++];
+            }
+            while (j < pendingSize) {
+                merged[k++] = fresh[j++];
+            }
+            sorted[order] = merged;
+        }
+        sortedSize += pendingSize;
+        pendingSize = 0;
+    }
+
+    private void mergeSort(int order, int[] a, int[] tmp, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, a, tmp, from, mid);
+        mergeSort(order, a, tmp, mid, to);
+        if (compare(order, a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            a[k] = j >= to || (i < mid && compare(order, tmp[i], tmp[j]) <= 0) ? tmp[i++] : tmp[j++];
+        }
+    }
+
+    //第一个不小于 key 的位置
+    private int lowerBound(int order, byte[] key) {
+        int[] ids = sorted[order];
+        int low = 0;
+        int high = sortedSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(order, ids[mid], key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //前 8 个字节按无符号大端拼成一个 long, 不足 8 个字节时补 0
+    private static long key(byte[] bytes, int offset, int length, boolean backward) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = i >= length ? 0 : backward ? bytes[offset + length - 1 - i] & 0xff : bytes[offset + i] & 0xff;
+            key = key << 8 | b;
+        }
+        return key;
+    }
+
+    private int compare(int order, int a, int b) {
+        int c = Long.compareUnsigned(keys[order][a], keys[order][b]);
+        if (c != 0) {
+            return c;
+        }
+        if (order == HUMPS) {
+            return compareBytes(humps, humpStart[a], humpStart[a + 1] - humpStart[a],
+                    humps, humpStart[b], humpStart[b + 1] - humpStart[b], false);
+        }
+        NameImpl x = table.entry(a);
+        NameImpl y = table.entry(b);
+        return compareBytes(x.getByteArray(), x.getByteOffset(), x.length,
+                y.getByteArray(), y.getByteOffset(), y.length, order == BACKWARD);
+    }
+
+    private int compareKey(int order, int id, byte[] key) {
+        if (order == HUMPS) {
+            return compareBytes(humps, humpStart[id], humpStart[id + 1] - humpStart[id], key, 0, key.length, false);
+        }
+        NameImpl n = table.entry(id);
+        return compareBytes(n.getByteArray(), n.getByteOffset(), n.length, key, 0, key.length, order == BACKWARD);
+    }
+
+    //无符号字节比较, 与 utf8 编码的字符顺序一致; backward 时从最后一个字节往前比较
+    private static int compareBytes(byte[] a, int aOff, int aLen, byte[] b, int bOff, int bLen, boolean backward) {
+        int n = Math.min(aLen, bLen);
+        for (int i = 0; i < n; i++) {
+            int x = backward ? a[aOff + aLen - 1 - i] & 0xff : a[aOff + i] & 0xff;
+            int y = backward ? b[bOff + bLen - 1 - i] & 0xff : b[bOff + i] & 0xff;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return aLen - bLen;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, int length, byte[] key) {
+        if (length < key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (bytes[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(byte[] bytes, int offset, int length, byte[] key) {
+        return length >= key.length && startsWith(bytes, offset + length - key.length, key.length, key);
+    }
+}
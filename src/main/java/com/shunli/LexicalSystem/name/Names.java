@@ -25,20 +25,24 @@
 
 package com.shunli.LexicalSystem.name;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  *
  */
 public class Names {
     private static Names instance = null;
 
-    public static Names instance() {
+    public static synchronized Names instance() {
         if (instance == null) {
             instance = new Names();
         }
         return instance;
     }
 
-    public final Table table = createTable();
+    //编译器的名称表总是 SharedNameTable, 可以直接在它之上创建会话表
+    public final SharedNameTable table = createTable();
 
     // 运算符和标点符号
     public final Name asterisk = fromString("*");
@@ -171,14 +175,31 @@ public class Names {
     public final Name altMetafactory = fromString("altMetafactory");
 
 
-    protected Table createTable() {
-        return new SharedNameTable(this);
+    //指定了 -Djavac.names.snapshot 时直接映射预先生成的名称表快照, 省去启动时登记名称的开销
+    protected SharedNameTable createTable() {
+        String snapshot = System.getProperty("javac.names.snapshot");
+        if (snapshot != null && new File(snapshot).isFile()) {
+            try {
+                return SharedNameTable.readSnapshot(this, new File(snapshot));
+            } catch (IOException e) {
+                // 快照损坏或版本不符时, 退回到正常创建
+            }
+        }
+        return SharedNameTable.create(this);
     }
 
     public void dispose() {
         table.dispose();
     }
 
+    /**
+     * 以当前的名称表作为基础表, 返回一张新的会话表。
+     * 基础表不会被冻结, 没有使用会话表的词法分析照常登记到基础表中; 本类中预先登记的名称在会话中仍然相等。
+     */
+    public SessionNameTable newSession() {
+        return table.newSession();
+    }
+
     public Name fromChars(char[] cs, int start, int len) {
         return table.fromChars(cs, start, len);
     }
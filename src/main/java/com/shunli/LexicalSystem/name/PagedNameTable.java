@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 1999, 2012, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.shunli.LexicalSystem.name;
+
+import com.sun.tools.javac.util.ArrayUtils;
+import com.sun.tools.javac.util.Convert;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Name.Table 的实现将所有名称存储在一组固定大小的共享字节页中，用满一页再分配新的一页。
+ * 这避免了为每个名称使用字节数组所产生的开销, 扩容时也不需要复制已有的名称,
+ * 大堆上不会出现一个巨大的字节数组。名称的位置用 (页号, 页内偏移) 压缩成的一个 int 表示。
+ * 可以被多个线程同时使用: 转换、计算 hash 和查找都不加锁, 只有登记新名称时才加锁。
+ * 登记时先写好名称和 hash 表, 最后写 volatile 的 size 发布; 查找时先读 size,
+ * 只相信编号不超过它的名称, 看到还没发布的名称或者旧的 hash 表时, 最多是没找到而转去加锁登记。
+ * 基础表(SharedNameTable)和会话表(SessionNameTable)共用这里的存储和查找, 各自只增加自己的功能。
+ */
+public abstract class PagedNameTable extends Table {
+    //开放寻址(线性探测)的 hash 表, 保存名称的编号 + 1, 0 表示空位
+    volatile int[] hashes;
+
+    //hashes 的大小减一, 大小总是 2 的幂; 只在锁内使用, 不加锁的查找用 hashes.length
+    int hashMask;
+
+    //按登记顺序排列的所有名称, 以及它们完整的 hash 值(扩容时无需重新计算)
+    volatile NameImpl[] entries;
+    volatile int[] entryHashes;
+
+    //已登记的名称个数, 写入它即发布了之前登记的所有名称
+    volatile int size = 0;
+
+    //每一页的大小, 也是页内偏移所占的位数; 超过一页的名称单独占用一页
+    static final int PAGE_SHIFT = 16;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    static final int OFFSET_MASK = PAGE_SIZE - 1;
+
+    //保存所有遇到的名称的字节页, 增加页时只复制页的引用, 其他线程通过 volatile 读到最新的页表
+    volatile byte[][] pages;
+
+    //已经使用的页数, 最后一页为当前页
+    int pageCount = 0;
+
+    //当前页中填充的字节数。
+    int nc = 0;
+
+    //本表第一个名称的编号; 会话表从 SESSION_FIRST_INDEX 开始编号, 与基础表的 getIndex 不会重叠
+    private final int firstIndex;
+
+    //前缀/后缀/驼峰查询的索引, 第一次查询时在表的锁外建立, 之后随登记的名称增量维护
+    private volatile NameIndex nameIndex;
+
+    //同一时间只有一个线程建立索引
+    private final Object indexLock = new Object();
+
+    //建立索引的最后一步在锁内补上的名称个数上限
+    private static final int CATCH_UP_IN_LOCK = 1024;
+
+    //查找时命中已有名称、新建名称的次数, 用来观察名称的去重比例; 命中不加锁, 用 LongAdder 计数
+    private final LongAdder hits = new LongAdder();
+    private long misses = 0;
+
+    //每个线程各自的 utf8 转换缓冲区, 字符转换和计算 hash 都在锁外完成
+    private static final ThreadLocal<byte[][]> utfBuffer = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[][]{new byte[256]};
+        }
+    };
+
+    //初始化hash表, hashSize 必须是 2 的幂, 装载因子超过 1/2 时扩容; 名称从 firstIndex 开始编号
+    PagedNameTable(Names names, int hashSize, int nameSize, int firstIndex) {
+        super(names);
+        this.firstIndex = firstIndex;
+        hashMask = hashSize - 1;
+        hashes = new int[hashSize];
+        entries = new NameImpl[hashSize >> 1];
+        entryHashes = new int[hashSize >> 1];
+        pages = new byte[Math.max(nameSize >> PAGE_SHIFT, 4)][];
+        newPage(PAGE_SIZE);
+    }
+
+    //只分配 hash 表, 名称和页由子类(从快照)填入
+    PagedNameTable(Names names, int hashSize) {
+        super(names);
+        firstIndex = 0;
+        hashMask = hashSize - 1;
+        hashes = new int[hashSize];
+    }
+
+    @Override
+    public Name fromChars(char[] cs, int start, int len) {
+        byte[][] holder = utfBuffer.get();
+        byte[] buf = holder[0] = ArrayUtils.ensureCapacity(holder[0], len);
+        //标识符几乎都是 ASCII, 每个字符直接对应一个字节; '\0' 在 utf8 中占两个字节, 不在此列
+        int i = 0;
+        char c;
+        while (i < len && (c = cs[start + i]) != 0 && c < 0x80) {
+            buf[i++] = (byte) c;
+        }
+        int nbytes = i;
+        if (i < len) {
+            buf = holder[0] = ArrayUtils.ensureCapacity(buf, len * 3);
+            nbytes = Convert.chars2utf(cs, start + i, buf, i, len - i);
+        }
+        return fromUtf(buf, 0, nbytes);
+    }
+
+    @Override
+    public Name fromUtf(byte[] cs, int start, int len) {
+        return enter(cs, start, len, hashValue(cs, start, len));
+    }
+
+    //查找或登记名称, 已有的名称不加锁就能找到
+    Name enter(byte[] cs, int start, int len, int hash) {
+        Name n = lookup(cs, start, len, hash);
+        if (n != null) {
+            hits.increment();
+            return n;
+        }
+        return insert(cs, start, len, hash);
+    }
+
+    //加锁后再查找一次(其他线程可能刚刚登记了同一个名称), 仍然没有时才登记
+    synchronized Name insert(byte[] cs, int start, int len, int hash) {
+        byte[][] pages = this.pages;
+        int[] hashes = this.hashes;
+        int h = hash & hashMask;
+        int e;
+        while ((e = hashes[h]) != 0) {
+            NameImpl n = entries[e - 1];
+            if (entryHashes[e - 1] == hash && n.length == len
+                    && equals(pages[n.address >>> PAGE_SHIFT], n.address & OFFSET_MASK, cs, start, len)) {
+                hits.increment();
+                return n;
+            }
+            h = (h + 1) & hashMask;
+        }
+
+        misses++;
+        int address = allocate(len);
+        System.arraycopy(cs, start, this.pages[address >>> PAGE_SHIFT], address & OFFSET_MASK, len);
+        int id = size;
+        NameImpl n = new NameImpl(this);
+        n.index = firstIndex + id;
+        n.address = address;
+        n.length = len;
+        n.ascii = isAscii(cs, start, len);
+
+        NameImpl[] entries = this.entries;
+        int[] entryHashes = this.entryHashes;
+        if (id == entries.length) {
+            entries = this.entries = Arrays.copyOf(entries, id << 1);
+            entryHashes = this.entryHashes = Arrays.copyOf(entryHashes, id << 1);
+        }
+        entries[id] = n;
+        entryHashes[id] = hash;
+        hashes[h] = id + 1;
+        //最后写 size, 不加锁的查找从这时起才会使用这个名称
+        size = id + 1;
+        if (nameIndex != null) {
+            nameIndex.add(id);
+        }
+        if (id + 1 > (hashMask + 1) >> 1) {
+            rehash();
+        }
+        return n;
+    }
+
+    /**
+     * 只查找不登记, 没有时返回 null, 不需要加锁。
+     * 先读 size, 编号不超过它的名称及其字节都已经可见; 更新的名称跳过, 由调用者加锁后再找
+     */
+    Name lookup(byte[] cs, int start, int len, int hash) {
+        int count = size;
+        int[] hashes = this.hashes;
+        NameImpl[] entries = this.entries;
+        int[] entryHashes = this.entryHashes;
+        byte[][] pages = this.pages;
+        int mask = hashes.length - 1;
+        int h = hash & mask;
+        int e;
+        while ((e = hashes[h]) != 0) {
+            if (e <= count) {
+                NameImpl n = entries[e - 1];
+                if (entryHashes[e - 1] == hash && n.length == len
+                        && equals(pages[n.address >>> PAGE_SHIFT], n.address & OFFSET_MASK, cs, start, len)) {
+                    return n;
+                }
+            }
+            h = (h + 1) & mask;
+        }
+        return null;
+    }
+
+    //在当前页中分配 len 个字节(空名称也占一个字节, 保证位置唯一), 返回压缩后的位置
+    private int allocate(int len) {
+        int size = Math.max(len, 1);
+        if (size > pages[pageCount - 1].length - nc) {
+            newPage(Math.max(size, PAGE_SIZE));
+        }
+        int address = (pageCount - 1) << PAGE_SHIFT | nc;
+        nc += size;
+        return address;
+    }
+
+    //reset() 之后留下的普通页会被直接重用
+    private void newPage(int pageSize) {
+        byte[][] pages = this.pages;
+        if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount << 1);
+        }
+        byte[] page = pages[pageCount];
+        if (page == null || page.length != pageSize || pageSize != PAGE_SIZE) {
+            pages[pageCount] = new byte[pageSize];
+        }
+        pageCount++;
+        this.pages = pages;
+        nc = 0;
+    }
+
+    //清空所有名称, 保留已经分配的 hash 表和普通页, 供下一次使用
+    synchronized void reset() {
+        Arrays.fill(hashes, 0);
+        Arrays.fill(entries, 0, size, null);
+        size = 0;
+        for (int i = 0; i < pageCount; i++) {
+            if (pages[i].length != PAGE_SIZE) {
+                pages[i] = null;
+            }
+        }
+        pageCount = 0;
+        newPage(PAGE_SIZE);
+        hits.reset();
+        misses = 0;
+        nameIndex = null;
+    }
+
+    //第 i 个登记的名称
+    NameImpl entry(int i) {
+        return entries[i];
+    }
+
+    @Override
+    public Name getName(int index) {
+        int count = size;
+        int id = index - firstIndex;
+        return id >= 0 && id < count ? entries[id] : null;
+    }
+
+    /**
+     * 已发布的名称不会再改变, 建立索引和第一次排序(一百万个名称需要几秒)都在表的锁外进行,
+     * 其他线程照常登记名称; 最后在锁内补上的名称不超过 CATCH_UP_IN_LOCK 个, 之后由 insert 增量维护
+     */
+    private NameIndex nameIndex() {
+        NameIndex index = nameIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (indexLock) {
+            if (nameIndex != null) {
+                return nameIndex;
+            }
+            index = new NameIndex(this);
+            int built = 0;
+            while (true) {
+                //建立期间其他线程登记的名称也先在锁外补上, 直到剩下的不超过 CATCH_UP_IN_LOCK 个
+                while (size - built > CATCH_UP_IN_LOCK) {
+                    for (int count = size; built < count; built++) {
+                        index.add(built);
+                    }
+                    index.flush();
+                }
+                synchronized (this) {
+                    //拿到锁之前又登记了很多名称时放开锁, 继续在锁外补
+                    if (size - built <= CATCH_UP_IN_LOCK) {
+                        for (; built < size; built++) {
+                            index.add(built);
+                        }
+                        nameIndex = index;
+                        return index;
+                    }
+                }
+            }
+        }
+    }
+
+    //以 prefix 开头的名称, 按字节顺序最多返回 limit 个, 用于符号补全
+    public List<Name> namesWithPrefix(String prefix, int limit) {
+        NameIndex index = nameIndex();
+        synchronized (this) {
+            return index.withPrefix(prefix, limit);
+        }
+    }
+
+    //以 suffix 结尾的名称, 最多返回 limit 个
+    public List<Name> namesWithSuffix(String suffix, int limit) {
+        NameIndex index = nameIndex();
+        synchronized (this) {
+            return index.withSuffix(suffix, limit);
+        }
+    }
+
+    //按驼峰缩写匹配的名称, 例如 "NPE" 匹配 NullPointerException, 最多返回 limit 个
+    public List<Name> namesMatchingHumps(String pattern, int limit) {
+        NameIndex index = nameIndex();
+        synchronized (this) {
+            return index.matchHumps(pattern, limit);
+        }
+    }
+
+    private static boolean isAscii(byte[] cs, int start, int len) {
+        for (int i = start; i < start + len; i++) {
+            if (cs[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //hash 表扩大一倍, 用保存的 hash 值重新放置所有名称
+    private void rehash() {
+        int mask = (hashMask << 1) | 1;
+        int[] table = new int[mask + 1];
+        for (int i = 0; i < size; i++) {
+            int h = entryHashes[i] & mask;
+            while (table[h] != 0) {
+                h = (h + 1) & mask;
+            }
+            table[h] = i + 1;
+        }
+        hashes = table;
+        hashMask = mask;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    //已登记的名称个数
+    public synchronized int getNameCount() {
+        return size;
+    }
+
+    //所有名称从 hash 位置到实际位置的平均探测距离, 0 表示没有冲突
+    public synchronized double getAverageProbeLength() {
+        long total = 0;
+        for (int h = 0; h <= hashMask; h++) {
+            if (hashes[h] != 0) {
+                total += probeLength(h);
+            }
+        }
+        return size == 0 ? 0 : (double) total / size;
+    }
+
+    //最长的探测距离
+    public synchronized int getMaxProbeLength() {
+        int max = 0;
+        for (int h = 0; h <= hashMask; h++) {
+            if (hashes[h] != 0) {
+                max = Math.max(max, probeLength(h));
+            }
+        }
+        return max;
+    }
+
+    //完整 32 位 hash 值与之前某个名称相同的名称个数, 用来衡量 hash 函数在实际名称上的冲突率
+    public synchronized int getHashCollisionCount() {
+        int[] sorted = Arrays.copyOf(entryHashes, size);
+        Arrays.sort(sorted);
+        int collisions = 0;
+        for (int i = 1; i < size; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                collisions++;
+            }
+        }
+        return collisions;
+    }
+
+    private int probeLength(int slot) {
+        return (slot - (entryHashes[hashes[slot] - 1] & hashMask)) & hashMask;
+    }
+}
@@ -0,0 +1,78 @@
+package com.shunli.LexicalSystem.name;
+
+/**
+ * 一次编译(会话)使用的名称表, 叠加在一张基础表之上。
+ * 查找时依次在本表和基础表中找(都不加锁), 都没有才登记到本表; 基础表在会话期间仍然可以登记新名称,
+ * 先查本表保证同一个字符串在会话中始终只对应一个 Name, 比较名称仍然只需要比较 table 和 index。
+ * 本表的名称从 SESSION_FIRST_INDEX 开始编号, getIndex 都大于基础表中的名称, 不会被当成关键字。
+ * 会话结束后调用 dispose 清空本表, 之后不能再使用本会话中的名称。
+ * 与基础表共用 PagedNameTable 的存储和查找, 但没有 newSession 和 writeSnapshot:
+ * 会话不能嵌套, 名称编号依赖基础表, 也不能单独保存。
+ */
+public class SessionNameTable extends PagedNameTable {
+
+    private final SharedNameTable base;
+
+    //是否有线程正在加锁登记; 只在锁内修改
+    private volatile boolean inserting;
+
+    SessionNameTable(SharedNameTable base, int firstIndex) {
+        super(base.names, 0x1000, 0, firstIndex);
+        this.base = base;
+    }
+
+    public SharedNameTable getBase() {
+        return base;
+    }
+
+    /**
+     * 本表中已有的名称优先: 会话登记之后基础表才有的同名名称不会替换会话中已经用过的 Name。
+     * 在基础表中找到后要再查一次本表, 其他线程可能在两次查找之间把同一个名称登记到了本表。
+     * 从这时起开始的登记都会在基础表中找到这个名称; 只有正在进行的登记才需要等它结束后再查
+     */
+    @Override
+    public Name fromUtf(byte[] cs, int start, int len) {
+        int hash = hashValue(cs, start, len);
+        Name n = lookup(cs, start, len, hash);
+        if (n != null) {
+            return n;
+        }
+        n = base.lookup(cs, start, len, hash);
+        if (n != null) {
+            Name own = inserting ? lookupLocked(cs, start, len, hash) : lookup(cs, start, len, hash);
+            return own != null ? own : n;
+        }
+        return insert(cs, start, len, hash);
+    }
+
+    private synchronized Name lookupLocked(byte[] cs, int start, int len, int hash) {
+        return lookup(cs, start, len, hash);
+    }
+
+    //加锁后依次查本表和基础表, 都没有才登记到本表
+    @Override
+    synchronized Name insert(byte[] cs, int start, int len, int hash) {
+        inserting = true;
+        try {
+            Name n = lookup(cs, start, len, hash);
+            if (n == null) {
+                n = base.lookup(cs, start, len, hash);
+            }
+            return n != null ? n : super.insert(cs, start, len, hash);
+        } finally {
+            inserting = false;
+        }
+    }
+
+    //编号小于 SESSION_FIRST_INDEX 的名称在基础表中
+    @Override
+    public Name getName(int index) {
+        return index < SharedNameTable.SESSION_FIRST_INDEX ? base.getName(index) : super.getName(index);
+    }
+
+    //会话表不放回回收列表, 清空后随会话一起被回收
+    @Override
+    public void dispose() {
+        reset();
+    }
+}
@@ -23,112 +23,274 @@
  * questions.
  */
 
+
 package com.shunli.LexicalSystem.name;
 
-import com.sun.tools.javac.util.ArrayUtils;
-import com.sun.tools.javac.util.Convert;
+import com.shunli.LexicalSystem.token.TokenKind;
 
+import java.io.*;
 import java.lang.ref.SoftReference;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Name.Table 的实现将所有名称存储在单个共享字节数组中，并根据需要对其进行扩展。
- * 这避免了为每个名称使用字节数组所产生的开销。
+ * 编译器使用的名称表: 最先登记所有 TokenKind 的名字, 可以回收重用、写成快照, 也可以作为会话表的基础表。
+ * 名称的存储和查找见 PagedNameTable。
  */
-public class SharedNameTable extends Table {
-    // 回收的列表, 用于重用
-    private static LinkedList<SoftReference<SharedNameTable>> freelist = new LinkedList<>();
+public class SharedNameTable extends PagedNameTable {
+    // 回收的列表, 用于重用; 无锁队列, 多个线程同时创建/释放时不会互相阻塞
+    private static final ConcurrentLinkedQueue<SoftReference<SharedNameTable>> freelist = new ConcurrentLinkedQueue<>();
+
+    //回收列表中最多保留的表个数, 可以通过 -Djavac.names.poolCapacity 设置
+    private static volatile int poolCapacity = Integer.getInteger("javac.names.poolCapacity", 8);
+
+    //回收列表中当前的表个数, 以及重用/新建/因超出上限而丢弃的次数
+    private static final AtomicInteger pooled = new AtomicInteger();
+    private static final AtomicLong reuseCount = new AtomicLong();
+    private static final AtomicLong allocationCount = new AtomicLong();
+    private static final AtomicLong discardCount = new AtomicLong();
 
-    static public synchronized SharedNameTable create(Names names) {
-        while (!freelist.isEmpty()) {
-            SharedNameTable t = freelist.poll().get();
+    static public SharedNameTable create(Names names) {
+        SoftReference<SharedNameTable> ref;
+        while ((ref = freelist.poll()) != null) {
+            pooled.decrementAndGet();
+            SharedNameTable t = ref.get();
             if (t != null) {
+                reuseCount.incrementAndGet();
                 return t;
             }
         }
+        allocationCount.incrementAndGet();
         return new SharedNameTable(names);
     }
 
-    static private synchronized void dispose(SharedNameTable t) {
-        freelist.addFirst(new SoftReference<>(t));
+    static private void dispose(SharedNameTable t) {
+        int n;
+        do {
+            n = pooled.get();
+            if (n >= poolCapacity) {
+                discardCount.incrementAndGet();
+                return;
+            }
+        } while (!pooled.compareAndSet(n, n + 1));
+        t.reset();
+        freelist.offer(new SoftReference<>(t));
+    }
+
+    public static void setPoolCapacity(int capacity) {
+        poolCapacity = capacity;
     }
 
-    //Name集合组成的hashTable
-    private NameImpl[] hashes;
+    public static long getReuseCount() {
+        return reuseCount.get();
+    }
 
-    //保存所有遇到的名称的共享字节数组
-    public byte[] bytes;
+    public static long getAllocationCount() {
+        return allocationCount.get();
+    }
 
-    //
-    private int hashMask;
+    public static long getDiscardCount() {
+        return discardCount.get();
+    }
 
-    //`names' 中填充的字节数。
-    private int nc = 0;
+    public static int getPoolSize() {
+        return pooled.get();
+    }
 
-    //初始化hash表
+    //会话表名称编号的起点, 基础表无论怎样增长都到不了这里
+    static final int SESSION_FIRST_INDEX = 1 << 30;
+
+    //快照文件的格式标识, 以及用来确认 hash 函数没有改变的样本
+    private static final int SNAPSHOT_MAGIC = 0x4a4e5403;
+    private static final byte[] SNAPSHOT_PROBE = "java.lang.Object".getBytes(StandardCharsets.US_ASCII);
+
+    //初始化hash表, hashSize 必须是 2 的幂; 装载因子超过 1/2 时扩容
     public SharedNameTable(Names names, int hashSize, int nameSize) {
-        super(names);
-        hashMask = hashSize - 1;
-        hashes = new NameImpl[hashSize];
-        bytes = new byte[nameSize];
+        super(names, hashSize, nameSize, 0);
+        reserveTokenNames();
+    }
 
+    /**
+     * 所有 TokenKind 的名字最先登记, 占用连续的编号 0..n-1。
+     * Tokens 用编号查关键字, 关键字表只需要这么大, 其他名称的编号都在它之外。
+     */
+    private void reserveTokenNames() {
+        for (TokenKind t : TokenKind.values()) {
+            if (t.name != null) {
+                byte[] bytes = t.name.getBytes(StandardCharsets.US_ASCII);
+                enter(bytes, 0, bytes.length, hashValue(bytes, 0, bytes.length));
+            }
+        }
     }
 
     public SharedNameTable(Names names) {
         this(names, 0x8000, 0x20000);
     }
 
+    //只分配 hash 表, 不登记任何名称, 名称和页都由 readSnapshot 填入
+    private SharedNameTable(Names names, int hashSize) {
+        super(names, hashSize);
+    }
+
+    //TokenKind 的名字和顺序决定了它们占用的编号 0..n-1, 两者有任何变化快照中的编号就对不上了
+    private static int tokenKindFingerprint() {
+        int h = 0;
+        for (TokenKind t : TokenKind.values()) {
+            h = h * 31 + (t.name == null ? 0 : t.name.hashCode());
+        }
+        return h;
+    }
+
     @Override
-    public Name fromChars(char[] cs, int start, int len) {
-        int nc = this.nc;
-        byte[] bytes = this.bytes = ArrayUtils.ensureCapacity(this.bytes, nc + len * 3);
-        int nbytes = Convert.chars2utf(cs, start, bytes, nc, len) - nc;
-        int h = hashValue(bytes, nc, nbytes) & hashMask;
-        NameImpl n = hashes[h];
-        while (n != null &&
-                (n.getByteLength() != nbytes ||
-                        !equals(bytes, n.index, bytes, nc, nbytes))) {
-            n = n.next;
+    synchronized void reset() {
+        super.reset();
+        reserveTokenNames();
+    }
+
+    /**
+     * 返回一张以本表为基础的会话表, 本表照常可以登记新名称。
+     * 长期运行的编译服务把关键字和常用名称留在基础表中, 每次编译使用各自的会话表,
+     * 编译结束后整张会话表一起丢弃, 基础表不会因为各次编译的名称而无限增长。
+     */
+    public SessionNameTable newSession() {
+        return new SessionNameTable(this, SESSION_FIRST_INDEX);
+    }
+
+    /**
+     * 把整张表(名称字节、hash 表布局和所有名称的位置)写成一个紧凑的二进制快照,
+     * 下次启动时用 readSnapshot 映射回来, 不需要重新登记任何名称
+     */
+    public synchronized void writeSnapshot(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(PAGE_SHIFT);
+            out.writeInt(hashValue(SNAPSHOT_PROBE, 0, SNAPSHOT_PROBE.length));
+            out.writeInt(tokenKindFingerprint());
+            out.writeInt(hashMask + 1);
+            out.writeInt(size);
+            out.writeInt(pageCount);
+            out.writeInt(nc);
+            for (int i = 0; i < pageCount; i++) {
+                int used = i == pageCount - 1 ? nc : pages[i].length;
+                out.writeInt(pages[i].length);
+                out.writeInt(used);
+                out.write(pages[i], 0, used);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(entries[i].address);
+                out.writeInt(entries[i].length);
+                out.writeInt(entryHashes[i]);
+                out.writeBoolean(entries[i].ascii);
+            }
+            for (int h = 0; h <= hashMask; h++) {
+                out.writeInt(hashes[h]);
+            }
         }
-        if (n == null) {
-            n = new NameImpl(this);
-            n.index = nc;
-            n.length = nbytes;
-            n.next = hashes[h];
-            hashes[h] = n;
-            this.nc = nc + nbytes;
-            if (nbytes == 0) {
-                this.nc++;
+    }
+
+    /**
+     * 从 writeSnapshot 写出的文件恢复一张表, 文件通过内存映射读取。
+     * 文件中的每个字段都先检查范围再使用, 截断或损坏的文件都报告为 IOException, 由调用者退回到正常创建
+     */
+    public static SharedNameTable readSnapshot(Names names, File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            check(channel.size() <= Integer.MAX_VALUE, file);
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            //页大小、hash 函数或 TokenKind 变了, 快照中的布局就不能再用
+            if (in.getInt() != SNAPSHOT_MAGIC
+                    || in.getInt() != PAGE_SHIFT
+                    || in.getInt() != hashValue(SNAPSHOT_PROBE, 0, SNAPSHOT_PROBE.length)
+                    || in.getInt() != tokenKindFingerprint()) {
+                throw new IOException("incompatible name table snapshot: " + file);
             }
+            int hashSize = in.getInt();
+            int size = in.getInt();
+            int pageCount = in.getInt();
+            int nc = in.getInt();
+            //hash 表至少要放下 size 个名称的两倍, 并且必须在文件中; 页号要能放进位置的高位
+            check(hashSize >= 2 && (hashSize & (hashSize - 1)) == 0 && hashSize <= in.remaining() >> 2, file);
+            check(size >= 0 && size <= hashSize >> 1, file);
+            check(pageCount >= 1 && pageCount <= 1 << (32 - PAGE_SHIFT) && pageCount <= in.remaining() >> 3, file);
+
+            SharedNameTable t = new SharedNameTable(names, hashSize);
+            //普通页都是 PAGE_SIZE; 放不下的长名称单独占一页, 页的大小正好是名称的长度
+            byte[][] pages = new byte[Math.max(pageCount, 4)][];
+            int[] used = new int[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                int length = in.getInt();
+                used[i] = in.getInt();
+                check(used[i] >= 0 && used[i] <= in.remaining()
+                        && (length == PAGE_SIZE ? used[i] <= length : length > PAGE_SIZE && used[i] == length), file);
+                pages[i] = new byte[length];
+                in.get(pages[i], 0, used[i]);
+            }
+            check(nc == used[pageCount - 1], file);
+
+            check(size <= in.remaining() / 13, file);
+            NameImpl[] entries = new NameImpl[hashSize >> 1];
+            int[] entryHashes = new int[entries.length];
+            for (int i = 0; i < size; i++) {
+                NameImpl n = new NameImpl(t);
+                n.index = i;
+                n.address = in.getInt();
+                n.length = in.getInt();
+                entryHashes[i] = in.getInt();
+                n.ascii = in.get() != 0;
+                int page = n.address >>> PAGE_SHIFT;
+                int offset = n.address & OFFSET_MASK;
+                check(page < pageCount && n.length >= 0 && n.length <= used[page] - offset, file);
+                entries[i] = n;
+            }
+            //每个名称在 hash 表中恰好出现一次, 其余位置为空, 查找的探测一定会结束
+            in.asIntBuffer().get(t.hashes);
+            int occupied = 0;
+            for (int e : t.hashes) {
+                check(e >= 0 && e <= size, file);
+                if (e != 0) {
+                    occupied++;
+                }
+            }
+            check(occupied == size, file);
+
+            t.pages = pages;
+            t.pageCount = pageCount;
+            t.nc = nc;
+            t.entries = entries;
+            t.entryHashes = entryHashes;
+            t.size = size;
+            check(t.hasTokenNames(), file);
+            return t;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated name table snapshot: " + file, e);
         }
-        return n;
     }
 
-    @Override
-    public Name fromUtf(byte[] cs, int start, int len) {
-        int h = hashValue(cs, start, len) & hashMask;
-        NameImpl n = hashes[h];
-        byte[] names = this.bytes;
-        while (n != null &&
-                (n.getByteLength() != len || !equals(names, n.index, cs, start, len))) {
-            n = n.next;
+    private static void check(boolean valid, File file) throws IOException {
+        if (!valid) {
+            throw new IOException("corrupt name table snapshot: " + file);
         }
-        if (n == null) {
-            int nc = this.nc;
-            names = this.bytes = ArrayUtils.ensureCapacity(names, nc + len);
-            System.arraycopy(cs, start, names, nc, len);
-            n = new NameImpl(this);
-            n.index = nc;
-            n.length = len;
-            n.next = hashes[h];
-            hashes[h] = n;
-            this.nc = nc + len;
-            if (len == 0) {
-                this.nc++;
+    }
+
+    //编号 0..n-1 确实是按顺序登记的 TokenKind 名字
+    private boolean hasTokenNames() {
+        int id = 0;
+        for (TokenKind k : TokenKind.values()) {
+            if (k.name != null) {
+                byte[] bytes = k.name.getBytes(StandardCharsets.US_ASCII);
+                if (id >= size || entries[id].length != bytes.length
+                        || !equals(pages[entries[id].address >>> PAGE_SHIFT], entries[id].address & OFFSET_MASK,
+                        bytes, 0, bytes.length)) {
+                    return false;
+                }
+                id++;
             }
         }
-        return n;
+        return true;
     }
 
     @Override
@@ -29,27 +29,70 @@ public abstract class Table {
     //Utf8 分割后的字符串转为name
     public abstract Name fromUtf(byte[] cs, int start, int len);
 
+    //按 Name.getIndex() 取回本表中的名称, 没有这个编号时返回 null
+    public abstract Name getName(int index);
+
     //释放此表使用的所有资源。
     public abstract void dispose();
 
-    // 获取某一个字符串的hashcode
+    // 获取某一个字符串的hashcode: MurmurHash3(32位), 每次处理 4 个字节,
+    // 最后再把各位充分打散, 用 & mask 取低位作为下标时也很少冲突
+    @SuppressWarnings("fallthrough")
     protected static int hashValue(byte bytes[], int offset, int length) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
         int h = 0;
         int off = offset;
+        int blockEnd = offset + (length & ~3);
+
+        while (off < blockEnd) {
+            int k = (bytes[off] & 0xff)
+                    | (bytes[off + 1] & 0xff) << 8
+                    | (bytes[off + 2] & 0xff) << 16
+                    | bytes[off + 3] << 24;
+            off += 4;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
 
-        for (int i = 0; i < length; i++) {
-            h = (h << 5) - h + bytes[off++];
+        int k = 0;
+        switch (length & 3) {
+            case 3:
+                k = (bytes[off + 2] & 0xff) << 16;
+            case 2:
+                k |= (bytes[off + 1] & 0xff) << 8;
+            case 1:
+                k |= bytes[off] & 0xff;
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                h ^= k;
         }
+
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
         return h;
     }
 
-    //比较两个字符串是否相同
+    //比较两个字符串是否相同; 调用前 hash 值和长度都已经相等, 绝大多数情况下两者确实相同
     protected static boolean equals(byte[] bytes1, int offset1,
                                     byte[] bytes2, int offset2, int length) {
+        //包名、类名等长名称通常前缀相同, 先比较最后一个字节
+        if (length > 0 && bytes1[offset1 + length - 1] != bytes2[offset2 + length - 1]) {
+            return false;
+        }
         int i = 0;
         while (i < length && bytes1[offset1 + i] == bytes2[offset2 + i]) {
             i++;
         }
         return i == length;
     }
-}
\ No newline at end of file
+}
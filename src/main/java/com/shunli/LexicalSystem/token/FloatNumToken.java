@@ -1,22 +1,20 @@
 package com.shunli.LexicalSystem.token;
 
+import com.shunli.LexicalSystem.LexicalAnalyzerUtil;
+import com.shunli.LexicalSystem.ReaderHelper;
+
 public class FloatNumToken extends Token {
-    private float value;
 
-    public FloatNumToken(int line, float v) {
-        super(line);
-        value = v;
+    public FloatNumToken(ReaderHelper source, int pos, int endPos) {
+        super(TokenKind.FLOATLITERAL, source, pos, endPos);
     }
 
     public boolean isNumber() {
         return true;
     }
 
-    public String getText() {
-        return Float.toString(value);
-    }
-
+    //浮点数很少用到具体的值, 用到时再解析
     public float getNumber() {
-        return value;
+        return LexicalAnalyzerUtil.stringToFloatNum(getText());
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,22 @@
 package com.shunli.LexicalSystem.token;
 
+import com.shunli.LexicalSystem.ReaderHelper;
+import com.shunli.LexicalSystem.name.Name;
+
 public class IdToken extends Token {
-    private String text;
+    //名称表中唯一的名称, 相同的标识符共享同一个 Name, 可以直接用 == 比较
+    private final Name name;
 
-    public IdToken(int line, String id) {
-        super(line);
-        text = id;
+    public IdToken(TokenKind kind, ReaderHelper source, int pos, int endPos, Name name) {
+        super(kind, source, pos, endPos);
+        this.name = name;
     }
 
     public boolean isIdentifier() {
         return true;
     }
 
-    public String getText() {
-        return text;
+    public Name getName() {
+        return name;
     }
-}
\ No newline at end of file
+}
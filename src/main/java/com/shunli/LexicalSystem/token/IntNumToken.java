@@ -1,10 +1,12 @@
 package com.shunli.LexicalSystem.token;
 
+import com.shunli.LexicalSystem.ReaderHelper;
+
 public class IntNumToken extends Token {
     private int value;
 
-    public IntNumToken(int line, int v) {
-        super(line);
+    public IntNumToken(ReaderHelper source, int pos, int endPos, int v) {
+        super(TokenKind.INTLITERAL, source, pos, endPos);
         value = v;
     }
 
@@ -12,11 +14,7 @@ public class IntNumToken extends Token {
         return true;
     }
 
-    public String getText() {
-        return Integer.toString(value);
-    }
-
     public float getNumber() {
         return value;
     }
-}
\ No newline at end of file
+}
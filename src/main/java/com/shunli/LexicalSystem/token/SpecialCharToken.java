@@ -1,23 +1,14 @@
 package com.shunli.LexicalSystem.token;
 
-public class SpecialCharToken extends Token {
-    private String ch;
+import com.shunli.LexicalSystem.ReaderHelper;
 
-    public SpecialCharToken(int line, char ch) {
-        super(line);
-        this.ch = "" + ch;
-    }
+public class SpecialCharToken extends Token {
 
-    public SpecialCharToken(int line, String string) {
-        super(line);
-        this.ch = string;
+    public SpecialCharToken(TokenKind kind, ReaderHelper source, int pos, int endPos) {
+        super(kind, source, pos, endPos);
     }
 
     public boolean isString() {
         return true;
     }
-
-    public String getText() {
-        return ch;
-    }
 }
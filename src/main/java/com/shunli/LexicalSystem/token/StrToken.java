@@ -1,11 +1,12 @@
 package com.shunli.LexicalSystem.token;
 
+import com.shunli.LexicalSystem.ReaderHelper;
+
+//字符和字符串字面量, [pos, endPos) 包含两边的引号, 文本则不包含
 public class StrToken extends Token {
-    private String literal;
 
-    public StrToken(int line, String str) {
-        super(line);
-        literal = str;
+    public StrToken(TokenKind kind, ReaderHelper source, int pos, int endPos) {
+        super(kind, source, pos, endPos);
     }
 
     public boolean isString() {
@@ -13,6 +14,10 @@ public class StrToken extends Token {
     }
 
     public String getText() {
-        return literal;
+        return source.getText(pos + 1, endPos - 1);
+    }
+
+    public CharSequence getChars() {
+        return source.getChars(pos + 1, endPos - 1);
     }
 }
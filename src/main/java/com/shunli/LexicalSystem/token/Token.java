@@ -1,19 +1,44 @@
 package com.shunli.LexicalSystem.token;
 
 
+import com.shunli.LexicalSystem.ReaderHelper;
+
 public abstract class Token {
-    public static final Token EOF = new Token(-1) {
+    public static final Token EOF = new Token() {
 
     }; // end of file
     public static final String EOL = "\\n";          // end of line
-    private int lineNumber;
 
-    protected Token(int line) {
-        lineNumber = line;
+    //token 的种类, 关键字、标识符、字面量和各种符号
+    public final TokenKind kind;
+
+    //token 所在的源文件, 文本只以 [pos, endPos) 的形式引用, 不单独保存
+    protected final ReaderHelper source;
+
+    //token 在源文件中的起始偏移量
+    public final int pos;
+
+    //token 在源文件中的结束偏移量(不包含)
+    public final int endPos;
+
+    protected Token() {
+        this(TokenKind.EOF, null, -1, -1);
     }
 
+    protected Token(TokenKind kind, ReaderHelper source, int pos, int endPos) {
+        this.kind = kind;
+        this.source = source;
+        this.pos = pos;
+        this.endPos = endPos;
+    }
+
+    //行号和列号不随 token 保存, 需要时再由源文件的行表查出
     public int getLineNumber() {
-        return lineNumber;
+        return source == null ? -1 : source.getLineMap().getLineNumber(pos);
+    }
+
+    public int getColumnNumber() {
+        return source == null ? -1 : source.getLineMap().getColumnNumber(pos);
     }
 
     public boolean isIdentifier() {
@@ -32,7 +57,13 @@ public abstract class Token {
         return -1;
     }
 
+    //按需从源文件中生成文本
     public String getText() {
-        return "";
+        return source == null ? "" : source.getText(pos, endPos);
+    }
+
+    //源文件中这段文本的视图, 不复制字符
+    public CharSequence getChars() {
+        return source == null ? "" : source.getChars(pos, endPos);
     }
 }
@@ -0,0 +1,211 @@
+package com.shunli.LexicalSystem.token;
+
+import com.shunli.LexicalSystem.ReaderHelper;
+import com.shunli.LexicalSystem.name.Name;
+import com.shunli.LexicalSystem.name.Table;
+
+import java.util.Arrays;
+
+/**
+ * 整个文件的 token 流, 按列保存在几个并行的数组中:
+ * 种类(ordinal), 起始位置, 结束位置, 标识符/关键字名称的编号, 以及字面量槽位(整数字面量的值)。
+ * 一百万个 token 只需要几个数组, 而不是一百万个 Token 对象, 也不引用任何 Name 对象;
+ * 名称按编号从名称表中取回, 字面量的文本可以按需从 [pos, endPos) 中取得。
+ * 下标超出范围时(包括游标在第一次 next() 之前)与 Token.EOF 一致: 种类为 EOF, 位置为 -1, 没有名称和文本。
+ */
+public class TokenBuffer {
+
+    private static final TokenKind[] KINDS = TokenKind.values();
+
+    //token 所在的源文件
+    private final ReaderHelper source;
+
+    //登记名称的表, 名称编号在这张表中查回 Name
+    private final Table table;
+
+    private byte[] kinds;
+    private int[] pos;
+    private int[] endPos;
+    //Name.getIndex(), 没有名称的 token 为 -1
+    private int[] names;
+    private int[] literals;
+
+    //已保存的 token 个数
+    private int size = 0;
+
+    public TokenBuffer(ReaderHelper source, int initialCapacity) {
+        this.source = source;
+        this.table = source.getNameTable();
+        int capacity = Math.max(initialCapacity, 16);
+        kinds = new byte[capacity];
+        pos = new int[capacity];
+        endPos = new int[capacity];
+        names = new int[capacity];
+        literals = new int[capacity];
+    }
+
+    public void add(TokenKind kind, int startPos, int end, Name name, int literal) {
+        if (size == kinds.length) {
+            grow(size + 1);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        pos[size] = startPos;
+        endPos[size] = end;
+        names[size] = name == null ? -1 : name.getIndex();
+        literals[size] = literal;
+        size++;
+    }
+
+    //把 other 中 [from, to) 的 token 整段复制过来, 位置统一平移 delta
+    public void addAll(TokenBuffer other, int from, int to, int delta) {
+        int count = to - from;
+        if (size + count > kinds.length) {
+            grow(size + count);
+        }
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.names, from, names, size, count);
+        System.arraycopy(other.literals, from, literals, size, count);
+        for (int i = 0; i < count; i++) {
+            pos[size + i] = other.pos[from + i] + delta;
+            endPos[size + i] = other.endPos[from + i] + delta;
+        }
+        size += count;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, size + (size >> 1));
+        kinds = Arrays.copyOf(kinds, capacity);
+        pos = Arrays.copyOf(pos, capacity);
+        endPos = Arrays.copyOf(endPos, capacity);
+        names = Arrays.copyOf(names, capacity);
+        literals = Arrays.copyOf(literals, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ReaderHelper getSource() {
+        return source;
+    }
+
+    public Table getNameTable() {
+        return table;
+    }
+
+    private boolean inRange(int i) {
+        return i >= 0 && i < size;
+    }
+
+    public TokenKind kind(int i) {
+        return inRange(i) ? KINDS[kinds[i] & 0xff] : TokenKind.EOF;
+    }
+
+    public int pos(int i) {
+        return inRange(i) ? pos[i] : -1;
+    }
+
+    public int endPos(int i) {
+        return inRange(i) ? endPos[i] : -1;
+    }
+
+    //标识符和关键字名称的编号, 其他 token 为 -1
+    public int nameIndex(int i) {
+        return inRange(i) ? names[i] : -1;
+    }
+
+    //标识符和关键字的名称, 其他 token 为 null
+    public Name name(int i) {
+        int index = nameIndex(i);
+        return index < 0 ? null : table.getName(index);
+    }
+
+    //整数字面量的值, 其他 token 为 0
+    public int intValue(int i) {
+        return inRange(i) ? literals[i] : 0;
+    }
+
+    //与 Token.getText() 一致, 字面量的文本不包含两边的引号
+    public String getText(int i) {
+        if (!inRange(i)) {
+            return "";
+        }
+        int quote = isQuoted(i) ? 1 : 0;
+        return source.getText(pos[i] + quote, endPos[i] - quote);
+    }
+
+    public CharSequence getChars(int i) {
+        if (!inRange(i)) {
+            return "";
+        }
+        int quote = isQuoted(i) ? 1 : 0;
+        return source.getChars(pos[i] + quote, endPos[i] - quote);
+    }
+
+    private boolean isQuoted(int i) {
+        TokenKind kind = kind(i);
+        return kind == TokenKind.CHARLITERAL || kind == TokenKind.STRINGLITERAL;
+    }
+
+    public int getLineNumber(int i) {
+        return inRange(i) ? source.getLineMap().getLineNumber(pos[i]) : -1;
+    }
+
+    public int getColumnNumber(int i) {
+        return inRange(i) ? source.getLineMap().getColumnNumber(pos[i]) : -1;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 在 TokenBuffer 上移动的游标, 给语法分析器提供任意长度的向前看,
+     * 移动和查看都不会创建对象
+     */
+    public class Cursor {
+        //当前 token 的下标, 调用 next() 之前为 -1
+        private int index = -1;
+
+        //移动到下一个 token, 没有更多 token 时返回 false
+        public boolean next() {
+            if (index < size) {
+                index++;
+            }
+            return index < size;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public void reset(int index) {
+            this.index = index;
+        }
+
+        public TokenKind kind() {
+            return TokenBuffer.this.kind(index);
+        }
+
+        public int pos() {
+            return TokenBuffer.this.pos(index);
+        }
+
+        public int endPos() {
+            return TokenBuffer.this.endPos(index);
+        }
+
+        public Name name() {
+            return TokenBuffer.this.name(index);
+        }
+
+        public int intValue() {
+            return TokenBuffer.this.intValue(index);
+        }
+
+        //向前看第 lookahead 个 token 的种类, 超出范围时为 EOF
+        public TokenKind peek(int lookahead) {
+            return TokenBuffer.this.kind(index + lookahead);
+        }
+    }
+}
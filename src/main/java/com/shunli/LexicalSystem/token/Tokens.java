@@ -39,8 +39,11 @@ public class Tokens {
 
     private final Names names;
 
-    //关键字数组。 将名称索引映射到令牌。
-    private final TokenKind[] key;
+    private static final TokenKind[] KINDS = TokenKind.values();
+
+    //关键字数组。 将名称索引映射到令牌的 ordinal。
+    //名称表最先登记 TokenKind 的名字, 它们的索引是 0..maxKey, 整个数组只有一百多个字节
+    private final byte[] key;
 
     //关键字数组。 将名称索引映射到令牌。
     private int maxKey = 0;
@@ -51,7 +54,7 @@ public class Tokens {
      //单例
     private static Tokens instance = null;
 
-    public static Tokens instance() {
+    public static synchronized Tokens instance() {
         if (instance == null)
             instance = new Tokens();
         return instance;
@@ -66,11 +69,11 @@ public class Tokens {
                 tokenName[t.ordinal()] = null;
         }
 
-        key = new TokenKind[maxKey + 1];
-        for (int i = 0; i <= maxKey; i++) key[i] = TokenKind.IDENTIFIER;
+        key = new byte[maxKey + 1];
+        for (int i = 0; i <= maxKey; i++) key[i] = (byte) TokenKind.IDENTIFIER.ordinal();
         for (TokenKind t : TokenKind.values()) {
             if (t.name != null)
-                key[tokenName[t.ordinal()].getIndex()] = t;
+                key[tokenName[t.ordinal()].getIndex()] = (byte) t.ordinal();
         }
     }
 
@@ -90,7 +93,7 @@ public class Tokens {
 //        if (name.toString() .equals("=")){
 //            return lookupKind("=");
 //        }
-        return (name.getIndex() > maxKey) ? TokenKind.IDENTIFIER : key[name.getIndex()];
+        return (name.getIndex() > maxKey) ? TokenKind.IDENTIFIER : KINDS[key[name.getIndex()] & 0xff];
     }
 
     TokenKind lookupKind(String name) {
@@ -2,7 +2,6 @@ package com.shunli
 
 import com.shunli.FileSystem.RegularFileObject
 import com.shunli.LexicalSystem.JavaTokenizer
-import com.shunli.LexicalSystem.ReaderHelper
 import java.io.File
 
 
@@ -14,11 +13,9 @@ object Main {
         val inputFile = this.javaClass.classLoader.getResource("javaFiles/BubbleSort.txt")!!.file
         val regularFileObject = RegularFileObject(File(inputFile))
 
-        val readerHelper = ReaderHelper(inputFile)
-
 
         //S1:词法分析系统
-        val javaTokenizer = JavaTokenizer(readerHelper)
+        val javaTokenizer = JavaTokenizer(regularFileObject)
 
         do {
             val readToken = javaTokenizer.readToken()